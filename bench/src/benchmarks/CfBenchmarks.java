@@ -0,0 +1,44 @@
+package benchmarks;
+
+import main.collabfilter.CollaborativeFiltering;
+import main.collabfilter.Rating;
+
+import org.la4j.vector.Vector;
+
+/*
+ * Collaborative filtering : RMSE over the ratings and one epoch of
+ * mini-batch gradient descent, with the learning parameters of
+ * CollaborativeFiltering.main.
+ */
+
+public class CfBenchmarks {
+	
+	private static final int NBR_USERS = 5000;
+	private static final int NBR_MOVIES = 2000;
+	private static final int NBR_RATINGS = 100000;
+	
+	public static void run(Harness harness, int[] factorCounts) throws Exception {
+		if(!harness.enabled("cf.CollaborativeFiltering.rmse", "cf.CollaborativeFiltering.sgdEpoch"))
+			return;
+		
+		for(int nbrFactors : factorCounts){
+			final java.util.Vector<Rating> ratings = SyntheticData.ratings(42, NBR_USERS, NBR_MOVIES, NBR_RATINGS);
+			final Vector[] users = SyntheticData.factors(43, NBR_USERS, nbrFactors);
+			final Vector[] movies = SyntheticData.factors(44, NBR_MOVIES, nbrFactors);
+			
+			Object[] params = {"factors", nbrFactors, "users", NBR_USERS, "movies", NBR_MOVIES, "ratings", NBR_RATINGS};
+			harness.run("cf.CollaborativeFiltering.rmse", Harness.params(params), new Harness.Op(){
+				public Object run(){
+					return CollaborativeFiltering.rmse(users, movies, ratings);
+				}
+			});
+			
+			harness.run("cf.CollaborativeFiltering.sgdEpoch", Harness.params(params), new Harness.Op(){
+				public Object run(){
+					CollaborativeFiltering.sgdEpoch(users, movies, ratings, Math.pow(150, -0.8), 0.02, 100);
+					return null;
+				}
+			});
+		}
+	}
+}
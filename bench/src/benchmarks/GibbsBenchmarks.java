@@ -0,0 +1,126 @@
+package benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import jgibblda.Estimator;
+import jgibblda.InferenceSession;
+import jgibblda.Inferencer;
+import jgibblda.LDACmdOption;
+import jgibblda.LDADataset;
+
+/*
+ * Gibbs sampling LDA (jgibblda) : one training sweep over all the words,
+ * inference of new documents against a trained model, and single documents
+ * through an InferenceSession. The samplers use a fixed seed.
+ */
+
+public class GibbsBenchmarks {
+	
+	private static final int NBR_DOCS = 200;
+	private static final int NBR_NEW_DOCS = 20;
+	private static final int INFERENCE_ITERS = 5;
+	
+	public static void run(Harness harness, int[] topics, int[] vocabSizes, int[] docLengths) throws Exception {
+		if(!harness.enabled("gibbs.Estimator.sampling", "gibbs.Estimator.sweepByWord", "gibbs.Inferencer.infSampling", "gibbs.Inferencer.infSamplingMH", "gibbs.InferenceSession.infer"))
+			return;
+		
+		for(int nbrTopics : topics){
+			for(int vocabSize : vocabSizes){
+				for(int docLength : docLengths)
+					runOne(harness, nbrTopics, vocabSize, docLength);
+			}
+		}
+	}
+	
+	private static void runOne(Harness harness, int nbrTopics, int vocabSize, int docLength) throws Exception {
+		File dir = Files.createTempDirectory("gibbs-bench").toFile();
+		SyntheticData.writeGibbsData(SyntheticData.documents(42, NBR_DOCS, vocabSize, docLength, nbrTopics), new File(dir, "trn.dat"));
+		SyntheticData.writeGibbsData(SyntheticData.documents(43, NBR_NEW_DOCS, vocabSize, docLength, nbrTopics), new File(dir, "new.dat"));
+		
+		LDACmdOption option = new LDACmdOption();
+		option.est = true;
+		option.dir = dir.getPath();
+		option.dfile = "trn.dat";
+		option.K = nbrTopics;
+		option.niters = 20;
+		option.savestep = 0;
+		option.twords = 0;
+		option.nthreads = 1;
+		option.seed = 42;
+		
+		final Estimator estimator = new Estimator();
+		if(!estimator.init(option))
+			throw new IllegalStateException("Could not initialize the estimator in " + dir);
+		
+		Object[] params = {"K", nbrTopics, "V", vocabSize, "docLength", docLength, "docs", NBR_DOCS};
+		harness.run("gibbs.Estimator.sampling", Harness.params(params), new Harness.Op(){
+			public Object run(){
+				estimator.sweep();
+				return null;
+			}
+		});
+		
+		// Same sweep in blocked word-major order
+		option.order = "word";
+		final Estimator wordEstimator = new Estimator();
+		if(!wordEstimator.init(option))
+			throw new IllegalStateException("Could not initialize the estimator in " + dir);
+		harness.run("gibbs.Estimator.sweepByWord", Harness.params(params), new Harness.Op(){
+			public Object run(){
+				wordEstimator.sweep();
+				return null;
+			}
+		});
+		
+		// A trained model on disk for the inferencer
+		estimator.estimate();
+		
+		LDACmdOption infOption = new LDACmdOption();
+		infOption.inf = true;
+		infOption.dir = dir.getPath();
+		infOption.modelName = "model-final";
+		infOption.twords = 0;
+		infOption.nthreads = 1;
+		infOption.seed = 42;
+		
+		final Inferencer inferencer = new Inferencer();
+		if(!inferencer.init(infOption))
+			throw new IllegalStateException("Could not load the trained model in " + dir);
+		inferencer.niters = INFERENCE_ITERS;
+		final LDADataset newData = LDADataset.readDataSet(new File(dir, "new.dat").getPath(), inferencer.globalDict);
+		
+		Object[] infParams = {"K", nbrTopics, "V", vocabSize, "docLength", docLength, "docs", NBR_NEW_DOCS, "iters", INFERENCE_ITERS};
+		harness.run("gibbs.Inferencer.infSampling", Harness.params(infParams), new Harness.Op(){
+			public Object run(){
+				return inferencer.inference(newData).theta(0, 0);
+			}
+		});
+		
+		// Same inference with the alias tables and Metropolis-Hastings
+		infOption.alias = true;
+		final Inferencer aliasInferencer = new Inferencer();
+		if(!aliasInferencer.init(infOption))
+			throw new IllegalStateException("Could not load the trained model in " + dir);
+		aliasInferencer.niters = INFERENCE_ITERS;
+		harness.run("gibbs.Inferencer.infSamplingMH", Harness.params(infParams), new Harness.Op(){
+			public Object run(){
+				return aliasInferencer.inference(newData).theta(0, 0);
+			}
+		});
+		
+		// One document per call, as in a request path
+		final InferenceSession session = inferencer.newSession();
+		final String newDoc = newData.docs[0].rawStr;
+		Object[] sessionParams = {"K", nbrTopics, "V", vocabSize, "docLength", docLength, "iters", INFERENCE_ITERS};
+		harness.run("gibbs.InferenceSession.infer", Harness.params(sessionParams), new Harness.Op(){
+			public Object run(){
+				return session.infer(newDoc)[0];
+			}
+		});
+		
+		for(File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+}
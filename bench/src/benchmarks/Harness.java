@@ -0,0 +1,181 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.math3.distribution.TDistribution;
+
+/*
+ * Minimal JMH-style harness : every benchmark runs a few warmup iterations,
+ * then measurement iterations of a fixed duration each, calling the
+ * operation back to back. The score is the average time per operation over
+ * the measurement iterations, with a 99.9% confidence interval, and the
+ * results are written as JSON in the layout JMH uses (-rf json), so they
+ * can be diffed between releases with the same tools.
+ */
+
+public class Harness {
+	
+	// The measured operation, its result is consumed so the JIT can not drop it
+	public interface Op {
+		Object run() throws Exception;
+	}
+	
+	private int warmupIterations;
+	private int measurementIterations;
+	private long iterationNanos;
+	private Pattern filter;
+	
+	private List<Result> results;
+	
+	// Where the harness reports, the code under test usually prints progress on System.out
+	private PrintStream console;
+	
+	// Sink for the results of the operations
+	private volatile int sink;
+	
+	public Harness(int warmupIterations, int measurementIterations, long iterationMillis, String filter, PrintStream console){
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+		this.iterationNanos = iterationMillis * 1000000L;
+		this.filter = (filter == null) ? null : Pattern.compile(filter);
+		this.results = new ArrayList<Result>();
+		this.console = console;
+	}
+	
+	// Whether any of the benchmarks is selected, so suites can skip building their inputs
+	public boolean enabled(String... names){
+		for(String name : names)
+			if(this.filter == null || this.filter.matcher(name).find())
+				return true;
+		return false;
+	}
+	
+	// Measure op, params describe the input sizes and go to the JSON as they are
+	public void run(String name, Map<String, String> params, Op op) throws Exception {
+		if(!this.enabled(name))
+			return;
+		
+		this.console.format("# %s %s\n", name, params);
+		for(int i = 0; i < this.warmupIterations; i++){
+			double score = this.iteration(op);
+			this.console.format(Locale.ROOT, "Warmup %d : %.3f ms/op\n", i + 1, score);
+		}
+		
+		double[] scores = new double[this.measurementIterations];
+		for(int i = 0; i < this.measurementIterations; i++){
+			scores[i] = this.iteration(op);
+			this.console.format(Locale.ROOT, "Iteration %d : %.3f ms/op\n", i + 1, scores[i]);
+		}
+		
+		Result result = new Result(name, params, scores);
+		this.console.format(Locale.ROOT, "Result : %.3f +- %.3f ms/op\n\n", result.score, result.error);
+		this.results.add(result);
+	}
+	
+	// Average time of one operation in ms, calling it until the iteration time is spent
+	private double iteration(Op op) throws Exception {
+		long ops = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			Object out = op.run();
+			this.sink += (out == null) ? 0 : out.hashCode();
+			ops++;
+			elapsed = System.nanoTime() - start;
+		} while(elapsed < this.iterationNanos);
+		
+		return elapsed / 1e6 / ops;
+	}
+	
+	/*
+	 * Results
+	 */
+	
+	private static class Result {
+		String name;
+		Map<String, String> params;
+		double[] scores;
+		double score, error;
+		
+		Result(String name, Map<String, String> params, double[] scores){
+			this.name = name;
+			this.params = new LinkedHashMap<String, String>(params);
+			this.scores = scores;
+			
+			double sum = 0;
+			for(double val : scores)
+				sum += val;
+			this.score = sum / scores.length;
+			
+			// Same interval as JMH : student t at 99.9%
+			if(scores.length > 1){
+				double var = 0;
+				for(double val : scores)
+					var += (val - this.score) * (val - this.score);
+				var /= (scores.length - 1);
+				this.error = new TDistribution(scores.length - 1).inverseCumulativeProbability(0.9995)
+						* Math.sqrt(var / scores.length);
+			}
+			else
+				this.error = Double.NaN;
+		}
+	}
+	
+	public void writeJson(String filename) throws Exception {
+		PrintWriter writer = new PrintWriter(new File(filename), "UTF-8");
+		writer.println("[");
+		for(int r = 0; r < this.results.size(); r++){
+			Result result = this.results.get(r);
+			writer.println("    {");
+			writer.format("        \"benchmark\" : \"%s\",\n", result.name);
+			writer.println("        \"mode\" : \"avgt\",");
+			writer.format("        \"warmupIterations\" : %d,\n", this.warmupIterations);
+			writer.format("        \"measurementIterations\" : %d,\n", this.measurementIterations);
+			writer.format("        \"measurementTime\" : \"%d ms\",\n", this.iterationNanos / 1000000);
+			writer.format("        \"jvm\" : \"%s\",\n", System.getProperty("java.vm.name"));
+			writer.format("        \"jdkVersion\" : \"%s\",\n", System.getProperty("java.version"));
+			
+			writer.println("        \"params\" : {");
+			int p = 0;
+			for(Map.Entry<String, String> param : result.params.entrySet()){
+				writer.format("            \"%s\" : \"%s\"%s\n", param.getKey(), param.getValue(),
+						(++p < result.params.size()) ? "," : "");
+			}
+			writer.println("        },");
+			
+			writer.println("        \"primaryMetric\" : {");
+			writer.format(Locale.ROOT, "            \"score\" : %s,\n", json(result.score));
+			writer.format(Locale.ROOT, "            \"scoreError\" : %s,\n", json(result.error));
+			writer.println("            \"scoreUnit\" : \"ms/op\",");
+			writer.print("            \"rawData\" : [ [ ");
+			for(int i = 0; i < result.scores.length; i++)
+				writer.print(((i > 0) ? ", " : "") + json(result.scores[i]));
+			writer.println(" ] ]");
+			writer.println("        }");
+			writer.println((r + 1 < this.results.size()) ? "    }," : "    }");
+		}
+		writer.println("]");
+		writer.close();
+		this.console.println("Results written to : " + filename);
+	}
+	
+	private static String json(double val){
+		return Double.isNaN(val) ? "\"NaN\"" : String.format(Locale.ROOT, "%.6f", val);
+	}
+	
+	// Helper for the suites, params in insertion order
+	public static Map<String, String> params(Object... keyValues){
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		for(int i = 0; i + 1 < keyValues.length; i += 2)
+			params.put(String.valueOf(keyValues[i]), String.valueOf(keyValues[i + 1]));
+		return params;
+	}
+}
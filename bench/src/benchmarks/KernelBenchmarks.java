@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.util.Random;
+
+import jgibblda.SamplingKernels;
+import main.kernels.Kernels;
+
+/*
+ * Kernels of the inner loops over K : Gibbs topic weights (Estimator.sampling),
+ * beta column times exp(digamma) normalized (InferenceBlock.inferDocument) and
+ * the dot product of two factor rows (CollaborativeFiltering.rmse), on 1000
+ * random rows per operation, with the scalar kernels and the SIMD ones.
+ * The SIMD ones are only measured when src-simd and gibbs/src-simd are on the
+ * classpath and the JVM runs with --add-modules=jdk.incubator.vector.
+ */
+
+public class KernelBenchmarks {
+	
+	private static final int NBR_ROWS = 1000;
+	
+	public static void run(Harness harness, int[] sizes) throws Exception {
+		if(!harness.enabled("kernels.topicWeights", "kernels.multiplyNormalize", "kernels.dot"))
+			return;
+		
+		for(int size : sizes)
+			runOne(harness, size);
+	}
+	
+	private static void runOne(Harness harness, final int size) throws Exception {
+		Random rand = new Random(42);
+		final double[][] a = new double[NBR_ROWS][size];
+		final double[][] b = new double[NBR_ROWS][size];
+		final int[][] wordCounts = new int[NBR_ROWS][size];
+		final int[][] docCounts = new int[NBR_ROWS][size];
+		final int[] topicCounts = new int[size];
+		for(int r = 0; r < NBR_ROWS; r++){
+			for(int k = 0; k < size; k++){
+				a[r][k] = rand.nextDouble();
+				b[r][k] = rand.nextDouble();
+				wordCounts[r][k] = rand.nextInt(20);
+				docCounts[r][k] = rand.nextInt(10);
+			}
+		}
+		for(int k = 0; k < size; k++)
+			topicCounts[k] = 1000 + rand.nextInt(100000);
+		final double[] out = new double[size];
+		
+		// Same hyperparameters as a Gibbs run with V = 10000 and 100 words per document
+		final double beta = 0.1, Vbeta = 10000 * beta, alpha = 50.0 / size, docNorm = 100 + size * alpha;
+		
+		// The scalar kernels, then the SIMD ones if they are loaded
+		SamplingKernels[] samplingKernels = (SamplingKernels.get() == SamplingKernels.scalar())
+				? new SamplingKernels[]{SamplingKernels.scalar()}
+				: new SamplingKernels[]{SamplingKernels.scalar(), SamplingKernels.get()};
+		for(final SamplingKernels kernels : samplingKernels){
+			Object[] params = {"K", size, "kernels", kernels.name(), "rows", NBR_ROWS};
+			harness.run("kernels.topicWeights", Harness.params(params), new Harness.Op(){
+				public Object run(){
+					double sum = 0;
+					for(int r = 0; r < NBR_ROWS; r++){
+						kernels.topicWeights(wordCounts[r], topicCounts, docCounts[r], beta, Vbeta, alpha, docNorm, out, size);
+						sum += out[r % size];
+					}
+					return sum;
+				}
+			});
+		}
+		
+		Kernels[] denseKernels = (Kernels.get() == Kernels.scalar())
+				? new Kernels[]{Kernels.scalar()}
+				: new Kernels[]{Kernels.scalar(), Kernels.get()};
+		for(final Kernels kernels : denseKernels){
+			Object[] params = {"K", size, "kernels", kernels.name(), "rows", NBR_ROWS};
+			harness.run("kernels.multiplyNormalize", Harness.params(params), new Harness.Op(){
+				public Object run(){
+					double sum = 0;
+					for(int r = 0; r < NBR_ROWS; r++)
+						sum += kernels.multiplyNormalize(a[r], b[r], out, size);
+					return sum;
+				}
+			});
+			
+			harness.run("kernels.dot", Harness.params(params), new Harness.Op(){
+				public Object run(){
+					double sum = 0;
+					for(int r = 0; r < NBR_ROWS; r++)
+						sum += kernels.dot(a[r], b[r], size);
+					return sum;
+				}
+			});
+		}
+	}
+}
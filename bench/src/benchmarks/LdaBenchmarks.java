@@ -0,0 +1,77 @@
+package benchmarks;
+
+import java.util.Arrays;
+
+import main.lda.Configs;
+import main.lda.Corpus;
+import main.lda.EstimatorBlock;
+import main.lda.InferenceBlock;
+import main.lda.Model;
+import main.lda.TopicModeler;
+import main.lda.Utilities;
+import main.lda.Vocabulary;
+
+/*
+ * Variational LDA : inference on one document, the M-step and the
+ * Newton-Raphson update of alpha, on one thread.
+ */
+
+public class LdaBenchmarks {
+	
+	private static final int NBR_DOCS = 100;
+	
+	public static void run(Harness harness, int[] topics, int[] vocabSizes, int[] docLengths) throws Exception {
+		if(!harness.enabled("lda.InferenceBlock.inferDocument", "lda.EstimatorBlock.estimate", "lda.Utilities.performNR"))
+			return;
+		
+		for(int nbrTopics : topics){
+			for(int vocabSize : vocabSizes){
+				for(int docLength : docLengths)
+					runOne(harness, nbrTopics, vocabSize, docLength);
+			}
+		}
+	}
+	
+	private static void runOne(Harness harness, int nbrTopics, int vocabSize, int docLength) throws Exception {
+		final Corpus corpus = SyntheticData.corpus(SyntheticData.documents(42, NBR_DOCS, vocabSize, docLength, nbrTopics));
+		Vocabulary vocab = SyntheticData.vocabulary(vocabSize);
+		
+		final Configs conf = new Configs();
+		conf.setNbrTopics(nbrTopics);
+		conf.setNbrThreads(1);
+		
+		final Model model = new Model();
+		model.initModel(corpus, conf, vocab);
+		
+		// One E-step, so phi and gamma hold real values for the M-step benchmarks
+		double[] residuals = new double[corpus.getNbrDocs()];
+		Arrays.fill(residuals, Double.POSITIVE_INFINITY);
+		new TopicModeler().expectationStep(corpus, model, conf, residuals, 0);
+		
+		Object[] params = {"K", nbrTopics, "V", vocabSize, "docLength", docLength, "docs", NBR_DOCS};
+		
+		final InferenceBlock infBlock = new InferenceBlock();
+		final int[] next = {0};
+		harness.run("lda.InferenceBlock.inferDocument", Harness.params(params), new Harness.Op(){
+			public Object run(){
+				infBlock.inferDocument(corpus.getDocs().get(next[0]++ % NBR_DOCS), model, conf);
+				return null;
+			}
+		});
+		
+		final EstimatorBlock estBlock = new EstimatorBlock();
+		harness.run("lda.EstimatorBlock.estimate", Harness.params(params), new Harness.Op(){
+			public Object run(){
+				estBlock.estimate(corpus, model, conf);
+				return model.getAlpha().getEntry(0);
+			}
+		});
+		
+		final Utilities utils = new Utilities();
+		harness.run("lda.Utilities.performNR", Harness.params(params), new Harness.Op(){
+			public Object run(){
+				return utils.performNR(conf, model.getAlpha(), model.getGamma()).getEntry(0);
+			}
+		});
+	}
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/*
+ * Entry point of the benchmark suite.
+ *   RunBenchmarks [-o results.json] [-f regex] [-quick]
+ * -f keeps the benchmarks whose name matches the regex (e.g. "gibbs\." or "inferDocument"),
+ * -quick runs the smallest sizes with short iterations, to check the suite itself.
+ */
+
+public class RunBenchmarks {
+	
+	public static void main(String[] args) throws Exception {
+		String output = "bench-results.json";
+		String filter = null;
+		boolean quick = false;
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-o") && i + 1 < args.length)
+				output = args[++i];
+			else if(args[i].equals("-f") && i + 1 < args.length)
+				filter = args[++i];
+			else if(args[i].equals("-quick"))
+				quick = true;
+			else {
+				System.out.println("Usage : RunBenchmarks [-o results.json] [-f regex] [-quick]");
+				return;
+			}
+		}
+		
+		// The progress messages of the models would drown the results and cost time in the loops
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream(){
+			public void write(int b){
+			}
+			public void write(byte[] b, int off, int len){
+			}
+		}));
+		
+		Harness harness = quick ? new Harness(1, 2, 100, filter, console) : new Harness(3, 5, 1000, filter, console);
+		
+		int[] topics = quick ? new int[]{10} : new int[]{10, 50, 100};
+		int[] vocabSizes = quick ? new int[]{1000} : new int[]{1000, 10000};
+		int[] docLengths = quick ? new int[]{50} : new int[]{50, 200};
+		int[] factorCounts = quick ? new int[]{18} : new int[]{10, 18, 50};
+		int[] kernelSizes = quick ? new int[]{15} : new int[]{15, 40, 100, 200};
+		
+		LdaBenchmarks.run(harness, topics, vocabSizes, docLengths);
+		GibbsBenchmarks.run(harness, topics, vocabSizes, docLengths);
+		CfBenchmarks.run(harness, factorCounts);
+		KernelBenchmarks.run(harness, kernelSizes);
+		
+		harness.writeJson(output);
+	}
+}
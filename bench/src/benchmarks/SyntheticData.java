@@ -0,0 +1,101 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import main.collabfilter.Rating;
+import main.lda.Corpus;
+import main.lda.Document;
+import main.lda.Vocabulary;
+
+import org.la4j.vector.Vector;
+import org.la4j.vector.dense.BasicVector;
+
+/*
+ * Reproducible inputs for the benchmarks, every generator takes its seed.
+ * Documents come from planted topics : each topic owns a block of the
+ * vocabulary, a document mixes three topics and draws a fifth of its
+ * words uniformly, so the samplers see skewed counts as on real data.
+ */
+
+public class SyntheticData {
+	
+	// nbrDocs documents of docLength word ids in [0, vocabSize)
+	public static int[][] documents(long seed, int nbrDocs, int vocabSize, int docLength, int nbrTopics){
+		Random rand = new Random(seed);
+		int block = Math.max(1, vocabSize / nbrTopics);
+		
+		int[][] docs = new int[nbrDocs][docLength];
+		for(int d = 0; d < nbrDocs; d++){
+			int[] topics = {rand.nextInt(nbrTopics), rand.nextInt(nbrTopics), rand.nextInt(nbrTopics)};
+			for(int n = 0; n < docLength; n++){
+				if(rand.nextDouble() < 0.2)
+					docs[d][n] = rand.nextInt(vocabSize);
+				else {
+					int topic = topics[rand.nextInt(topics.length)];
+					docs[d][n] = Math.min(vocabSize - 1, topic * block + rand.nextInt(block));
+				}
+			}
+		}
+		return docs;
+	}
+	
+	public static Corpus corpus(int[][] docs){
+		List<Document> documents = new ArrayList<Document>(docs.length);
+		for(int d = 0; d < docs.length; d++){
+			List<Integer> features = new ArrayList<Integer>(docs[d].length);
+			for(int id : docs[d])
+				features.add(id);
+			documents.add(new Document(features, 1000000 + d, d));
+		}
+		return new Corpus(documents);
+	}
+	
+	public static Vocabulary vocabulary(int vocabSize){
+		List<String> words = new ArrayList<String>(vocabSize);
+		for(int w = 0; w < vocabSize; w++)
+			words.add(word(w));
+		return new Vocabulary(words);
+	}
+	
+	// Documents in the jgibblda format : number of documents, then one line of words per document
+	public static void writeGibbsData(int[][] docs, File file) throws Exception {
+		PrintWriter writer = new PrintWriter(file, "UTF-8");
+		writer.println(docs.length);
+		for(int[] doc : docs){
+			StringBuilder line = new StringBuilder();
+			for(int n = 0; n < doc.length; n++)
+				line.append((n > 0) ? " " : "").append(word(doc[n]));
+			writer.println(line);
+		}
+		writer.close();
+	}
+	
+	private static String word(int id){
+		return "w" + id;
+	}
+	
+	// nbrRatings ratings in 1..5 over nbrUsers users and nbrMovies movies
+	public static java.util.Vector<Rating> ratings(long seed, int nbrUsers, int nbrMovies, int nbrRatings){
+		Random rand = new Random(seed);
+		java.util.Vector<Rating> ratings = new java.util.Vector<Rating>(nbrRatings);
+		for(int i = 0; i < nbrRatings; i++)
+			ratings.add(new Rating(rand.nextInt(nbrUsers), rand.nextInt(nbrMovies), 1 + rand.nextInt(5)));
+		return ratings;
+	}
+	
+	// Random factor vectors, as CollaborativeFiltering initializes them
+	public static Vector[] factors(long seed, int count, int nbrFactors){
+		Random rand = new Random(seed);
+		Vector[] vectors = new Vector[count];
+		for(int i = 0; i < count; i++){
+			vectors[i] = new BasicVector(nbrFactors);
+			for(int j = 0; j < nbrFactors; j++)
+				vectors[i].set(j, rand.nextDouble());
+		}
+		return vectors;
+	}
+}
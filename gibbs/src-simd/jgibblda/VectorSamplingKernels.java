@@ -0,0 +1,46 @@
+package jgibblda;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD sampling kernels on the preferred vector shape of the CPU: the counts
+ * are loaded as ints on half the shape and widened to doubles, with a scalar
+ * loop for the tail. Only loaded through SamplingKernels.get(), compiled apart
+ * from gibbs/src with
+ *   javac --add-modules=jdk.incubator.vector -cp <classes of gibbs/src> gibbs/src-simd/jgibblda/*.java
+ */
+class VectorSamplingKernels extends SamplingKernels {
+
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED.withShape(
+			VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+	VectorSamplingKernels(){
+	}
+
+	public String name(){
+		return "vector-" + DOUBLES.vectorBitSize();
+	}
+
+	public void topicWeights(int [] nw, int [] nwsum, int [] nd, double beta, double Vbeta, double alpha,
+			double docNorm, double [] p, int K){
+		int k = 0;
+		for (int bound = DOUBLES.loopBound(K); k < bound; k += DOUBLES.length()){
+			DoubleVector word = toDoubles(nw, k).add(beta);
+			DoubleVector corpus = toDoubles(nwsum, k).add(Vbeta);
+			DoubleVector doc = toDoubles(nd, k).add(alpha);
+			word.div(corpus).mul(doc).div(docNorm).intoArray(p, k);
+		}
+		for (; k < K; k++){
+			p[k] = (nw[k] + beta)/(nwsum[k] + Vbeta) * (nd[k] + alpha)/docNorm;
+		}
+	}
+
+	private static DoubleVector toDoubles(int [] counts, int offset){
+		return (DoubleVector) IntVector.fromArray(INTS, counts, offset).convertShape(VectorOperators.I2D, DOUBLES, 0);
+	}
+}
@@ -0,0 +1,95 @@
+package jgibblda;
+
+import java.util.SplittableRandom;
+
+/**
+ * Alias tables (Vose's method) for a set of discrete distributions over the
+ * same K outcomes, one per row, kept in flat arrays. Building a row costs
+ * O(K) and drawing from it O(1). The tables are read only once built, so
+ * several threads can draw from them at the same time.
+ */
+public class AliasTable {
+
+	//---------------------------------------------------------------
+	// Instance Variables
+	//---------------------------------------------------------------
+
+	private final int K;
+	private final double [] prob;	// prob[row * K + i]: probability of keeping outcome i in its bucket
+	private final int [] alias;		// alias[row * K + i]: outcome drawn otherwise
+
+	// work lists of the build, only used by build()
+	private final int [] small, large;
+	private final double [] scaled;
+
+	//---------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------
+
+	public AliasTable(int rows, int K){
+		this.K = K;
+		prob = new double[rows * K];
+		alias = new int[rows * K];
+		small = new int[K];
+		large = new int[K];
+		scaled = new double[K];
+	}
+
+	//---------------------------------------------------------------
+	// Public Methods
+	//---------------------------------------------------------------
+
+	/**
+	 * build the table of a row from unnormalized non-negative weights of size K, not thread safe
+	 */
+	public void build(int row, double [] weights){
+		double sum = 0;
+		for (int k = 0; k < K; k++){
+			sum += weights[k];
+		}
+
+		int nsmall = 0, nlarge = 0;
+		for (int k = 0; k < K; k++){
+			scaled[k] = weights[k] * K / sum;
+			if (scaled[k] < 1.0)
+				small[nsmall++] = k;
+			else
+				large[nlarge++] = k;
+		}
+
+		int base = row * K;
+		while (nsmall > 0 && nlarge > 0){
+			int s = small[--nsmall];
+			int l = large[--nlarge];
+			prob[base + s] = scaled[s];
+			alias[base + s] = l;
+
+			scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+			if (scaled[l] < 1.0)
+				small[nsmall++] = l;
+			else
+				large[nlarge++] = l;
+		}
+
+		// what is left is 1 up to rounding
+		while (nlarge > 0){
+			int l = large[--nlarge];
+			prob[base + l] = 1.0;
+			alias[base + l] = l;
+		}
+		while (nsmall > 0){
+			int s = small[--nsmall];
+			prob[base + s] = 1.0;
+			alias[base + s] = s;
+		}
+	}
+
+	/**
+	 * draw an outcome of a row
+	 */
+	public int sample(int row, SplittableRandom rand){
+		int k = rand.nextInt(K);
+		int i = row * K + k;
+		return (rand.nextDouble() < prob[i]) ? k : alias[i];
+	}
+}
@@ -0,0 +1,382 @@
+package jgibblda;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel loader of the dataset files (number of documents on the first
+ * line, then one document per line, words separated by blanks).
+ * The file is read as bytes and split into ranges of whole lines, each range
+ * is tokenized by its own thread straight into int arrays, against a local
+ * hash table over the bytes of the words, so a String is only created once
+ * per distinct word of a range. The local dictionaries are then merged in
+ * file order, which gives the words the same ids as the line by line reader
+ * (order of first occurrence).
+ */
+public class DatasetReader {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	//---------------------------------------------------------------
+	// Reading
+	//---------------------------------------------------------------
+
+	/**
+	 * read a dataset file
+	 * @param filename dataset file
+	 * @param dict global dictionary, words not in it are dropped, null to build a new dictionary
+	 * @param nthreads number of threads the file is parsed with
+	 * @return dataset if success and null otherwise
+	 */
+	public static LDADataset read(String filename, Dictionary dict, int nthreads){
+		try {
+			File file = new File(filename);
+			if (file.length() >= Integer.MAX_VALUE){
+				// too large for a single array, read line by line
+				return (dict == null) ? LDADataset.readDataSet(filename) : LDADataset.readDataSet(filename, dict);
+			}
+
+			byte [] bytes = Files.readAllBytes(file.toPath());
+
+			// first line: number of documents
+			int pos = 0;
+			while (pos < bytes.length && bytes[pos] != '\n'){
+				pos++;
+			}
+			int M = Integer.parseInt(new String(bytes, 0, pos, UTF8).trim());
+			pos++;
+
+			// ranges of whole lines, one per thread
+			nthreads = Math.max(1, Math.min(nthreads, M));
+			int [] bounds = new int[nthreads + 1];
+			bounds[0] = Math.min(pos, bytes.length);
+			for (int t = 1; t < nthreads; t++){
+				int b = Math.max(bounds[t - 1], pos + (int) ((long) (bytes.length - pos) * t / nthreads));
+				while (b < bytes.length && b > 0 && bytes[b - 1] != '\n'){
+					b++;
+				}
+				bounds[t] = b;
+			}
+			bounds[nthreads] = bytes.length;
+
+			final Chunk [] chunks = new Chunk[nthreads];
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+			for (int t = 0; t < nthreads; t++){
+				chunks[t] = new Chunk(bytes, bounds[t], bounds[t + 1], M);
+				final Chunk chunk = chunks[t];
+				tasks.add(new Callable<Object>(){
+					public Object call(){
+						chunk.parse();
+						return null;
+					}
+				});
+			}
+			runAll(tasks, nthreads);
+
+			int lines = 0;
+			for (Chunk chunk : chunks){
+				lines += chunk.nlines;
+			}
+			if (lines < M){
+				System.out.println("Read Dataset Error: " + filename + " has " + lines + " documents, " + M + " expected");
+				return null;
+			}
+
+			// documents past the first M lines are ignored, as by the line by line reader,
+			// their words must not reach the dictionary either
+			lines = 0;
+			for (Chunk chunk : chunks){
+				chunk.trim(M - lines);
+				lines += chunk.nlines;
+			}
+
+			LDADataset data = (dict == null) ? new LDADataset(M) : new LDADataset(M, dict);
+			mergeDictionaries(data, dict, chunks);
+
+			// remap the tokens of every range to the merged ids and create the documents
+			final LDADataset dataset = data;
+			tasks.clear();
+			int first = 0;
+			for (Chunk chunk : chunks){
+				final Chunk c = chunk;
+				final int start = first;
+				tasks.add(new Callable<Object>(){
+					public Object call(){
+						c.fill(dataset, start);
+						return null;
+					}
+				});
+				first += chunk.nlines;
+				if (first >= M)
+					break;
+			}
+			runAll(tasks, nthreads);
+
+			data.V = data.localDict.word2id.size();
+			return data;
+		}
+		catch (Exception e){
+			System.out.println("Read Dataset Error: " + e.getMessage());
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * give ids to the words of every range, in file order, dropping the words
+	 * not in the global dictionary if there is one
+	 */
+	private static void mergeDictionaries(LDADataset data, Dictionary dict, Chunk [] chunks){
+		int [] localToGlobal = (dict == null) ? null : new int[16];
+
+		for (Chunk chunk : chunks){
+			chunk.ids = new int[chunk.nwords];
+			for (int l = 0; l < chunk.nwords; l++){
+				String word = chunk.word(l);
+
+				if (dict != null){
+					Integer id = dict.getID(word);
+					if (id == null){
+						chunk.ids[l] = -1;
+						continue;
+					}
+
+					Integer _id = data.localDict.getID(word);
+					if (_id == null){
+						_id = data.localDict.addWord(word);
+						if (_id == localToGlobal.length)
+							localToGlobal = Arrays.copyOf(localToGlobal, 2 * _id);
+						localToGlobal[_id] = id;
+					}
+					chunk.ids[l] = _id;
+				}
+				else {
+					chunk.ids[l] = data.localDict.addWord(word);
+				}
+			}
+		}
+
+		if (dict != null)
+			data.localToGlobal = localToGlobal;
+	}
+
+	private static void runAll(List<Callable<Object>> tasks, int nthreads) throws InterruptedException {
+		if (nthreads == 1){
+			for (Callable<Object> task : tasks){
+				try {
+					task.call();
+				}
+				catch (Exception e){
+					throw new IllegalStateException("Dataset parsing failed", e);
+				}
+			}
+			return;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+		try {
+			for (Future<Object> result : pool.invokeAll(tasks)){
+				result.get();
+			}
+		}
+		catch (ExecutionException e){
+			throw new IllegalStateException("Dataset parsing failed", e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	//---------------------------------------------------------------
+	// Ranges
+	//---------------------------------------------------------------
+
+	/**
+	 * the lines of one byte range, tokenized against a local dictionary
+	 */
+	private static class Chunk {
+		final byte [] bytes;
+		final int start, end;
+		final int maxLines;
+
+		int nlines;
+		int [] lineStarts = new int[64];	// byte range of each line, without the line break
+		int [] lineEnds = new int[64];
+		int [] tokenStarts = new int[65];	// tokens of line i are tokens[tokenStarts[i], tokenStarts[i + 1])
+		int [] tokens = new int[1024];		// local word id of each token
+		int ntokens;
+
+		// local dictionary: open addressing over the bytes of the words, entries are local id + 1
+		int nwords;
+		int [] wordStarts = new int[256];
+		int [] wordLengths = new int[256];
+		int [] hashes = new int[256];
+		int [] slots = new int[512];
+
+		int [] ids;		// merged id of each local word, -1 if dropped
+
+		Chunk(byte [] bytes, int start, int end, int maxLines){
+			this.bytes = bytes;
+			this.start = start;
+			this.end = end;
+			this.maxLines = maxLines;
+		}
+
+		/**
+		 * split the range into lines and the lines into tokens
+		 */
+		void parse(){
+			int pos = start;
+			while (pos < end && nlines < maxLines){
+				int lineEnd = pos;
+				while (lineEnd < end && bytes[lineEnd] != '\n'){
+					lineEnd++;
+				}
+
+				if (nlines == lineStarts.length){
+					lineStarts = Arrays.copyOf(lineStarts, 2 * nlines);
+					lineEnds = Arrays.copyOf(lineEnds, 2 * nlines);
+					tokenStarts = Arrays.copyOf(tokenStarts, 2 * nlines + 1);
+				}
+				lineStarts[nlines] = pos;
+				lineEnds[nlines] = (lineEnd > pos && bytes[lineEnd - 1] == '\r') ? lineEnd - 1 : lineEnd;
+				tokenStarts[nlines] = ntokens;
+
+				int i = pos;
+				int last = lineEnds[nlines];
+				while (i < last){
+					while (i < last && isBlank(bytes[i])){
+						i++;
+					}
+					int tokenStart = i;
+					int h = 0x811C9DC5;
+					while (i < last && !isBlank(bytes[i])){
+						h = (h ^ bytes[i]) * 0x01000193;
+						i++;
+					}
+					if (i > tokenStart)
+						addToken(tokenStart, i - tokenStart, h);
+				}
+
+				nlines++;
+				pos = lineEnd + 1;
+			}
+			tokenStarts[nlines] = ntokens;
+		}
+
+		private static boolean isBlank(byte b){
+			return b == ' ' || b == '\t' || b == '\r';
+		}
+
+		private void addToken(int tokenStart, int length, int h){
+			h ^= h >>> 16;
+			int mask = slots.length - 1;
+			int slot = h & mask;
+			int id = -1;
+			while (slots[slot] != 0){
+				int candidate = slots[slot] - 1;
+				if (hashes[candidate] == h && sameBytes(wordStarts[candidate], wordLengths[candidate], tokenStart, length)){
+					id = candidate;
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+
+			if (id < 0){
+				id = nwords++;
+				if (id == wordStarts.length){
+					wordStarts = Arrays.copyOf(wordStarts, 2 * id);
+					wordLengths = Arrays.copyOf(wordLengths, 2 * id);
+					hashes = Arrays.copyOf(hashes, 2 * id);
+				}
+				wordStarts[id] = tokenStart;
+				wordLengths[id] = length;
+				hashes[id] = h;
+				slots[slot] = id + 1;
+				if (2 * nwords > slots.length)
+					rehash();
+			}
+
+			if (ntokens == tokens.length)
+				tokens = Arrays.copyOf(tokens, 2 * ntokens);
+			tokens[ntokens++] = id;
+		}
+
+		private boolean sameBytes(int a, int alen, int b, int blen){
+			if (alen != blen)
+				return false;
+			for (int i = 0; i < alen; i++){
+				if (bytes[a + i] != bytes[b + i])
+					return false;
+			}
+			return true;
+		}
+
+		private void rehash(){
+			slots = new int[2 * slots.length];
+			int mask = slots.length - 1;
+			for (int id = 0; id < nwords; id++){
+				int slot = hashes[id] & mask;
+				while (slots[slot] != 0){
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = id + 1;
+			}
+		}
+
+		/**
+		 * keep only the first maxLines lines of the range, and the local words
+		 * occurring in them (local ids are in order of first occurrence, so
+		 * these are the first ones)
+		 */
+		void trim(int maxLines){
+			if (nlines <= maxLines)
+				return;
+			nlines = Math.max(0, maxLines);
+			ntokens = tokenStarts[nlines];
+
+			int used = 0;
+			for (int j = 0; j < ntokens; j++){
+				used = Math.max(used, tokens[j] + 1);
+			}
+			nwords = used;
+		}
+
+		String word(int l){
+			return new String(bytes, wordStarts[l], wordLengths[l], UTF8);
+		}
+
+		/**
+		 * create the documents of this range, from document index first on
+		 */
+		void fill(LDADataset data, int first){
+			for (int i = 0; i < nlines && first + i < data.M; i++){
+				int count = 0;
+				for (int j = tokenStarts[i]; j < tokenStarts[i + 1]; j++){
+					if (ids[tokens[j]] >= 0)
+						count++;
+				}
+
+				Document doc = new Document(count);
+				int n = 0;
+				for (int j = tokenStarts[i]; j < tokenStarts[i + 1]; j++){
+					int id = ids[tokens[j]];
+					if (id >= 0)
+						doc.words[n++] = id;
+				}
+				doc.rawStr = new String(bytes, lineStarts[i], lineEnds[i] - lineStarts[i], UTF8);
+				data.setDoc(doc, first + i);
+			}
+		}
+	}
+}
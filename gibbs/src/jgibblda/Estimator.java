@@ -28,8 +28,18 @@
 
 package jgibblda;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class Estimator {
 	
@@ -37,6 +47,21 @@ public class Estimator {
 	protected Model trnModel;
 	LDACmdOption option;
 	
+	// background thread saving the checkpoints, and the checkpoint being saved
+	private ExecutorService saver;
+	private Future<?> pendingSave;
+	
+	// pool of the log-likelihood computations, and the last log-likelihood of this run
+	private ExecutorService workers;
+	private double lastLikelihood = Double.NaN;
+	
+	// loop over the topics of sampling(), SIMD when available
+	private final SamplingKernels kernels = SamplingKernels.get();
+	
+	// word-major layout of the tokens and their topics in that order, null for document order
+	private WordOrder wordOrder;
+	private int [] wordTopics;
+	
 	public boolean init(LDACmdOption option){
 		this.option = option;
 		trnModel = new Model();
@@ -51,55 +76,138 @@ public class Estimator {
 				return false;
 		}
 		
+		if (option.order.equals("word")){
+			// blocks whose nd rows take about 256KB
+			wordOrder = new WordOrder(trnModel.data, Math.max(64, (256 << 10) / (4 * trnModel.K)));
+			wordTopics = wordOrder.gather(trnModel);
+		}
+		else if (!option.order.equals("doc")){
+			System.out.println("Unknown sweep order " + option.order + ", expected doc or word");
+			return false;
+		}
+		
 		return true;
 	}
 	
 	public void estimate(){
+		if (option.nchains > 1){
+			estimateChains(option.nchains);
+			return;
+		}
+		
 		System.out.println("Sampling " + trnModel.niters + " iteration!");
 		
 		int lastIter = trnModel.liter;
 		for (trnModel.liter = lastIter + 1; trnModel.liter < trnModel.niters + lastIter; trnModel.liter++){
 			System.out.println("Iteration " + trnModel.liter + " ...");
-			
-			// for all z_i
-			for (int m = 0; m < trnModel.M; m++){				
-				for (int n = 0; n < trnModel.data.docs[m].length; n++){
-					// z_i = z[m][n]
-					// sample from p(z_i|z_-i, w)
-					int topic = sampling(m, n);
-					trnModel.z[m].set(n, topic);
-				}// end for each word
-			}// end for each document
+			sweep();
 			
 			if (option.savestep > 0){
 				if (trnModel.liter % option.savestep == 0){
-					System.out.println("Saving the model at iteration " + trnModel.liter + " ...");
-					computeTheta();
-					computePhi();
-					trnModel.saveModel("model-" + Conversion.ZeroPad(trnModel.liter, 5));
+					System.out.println("Saving the model at iteration " + trnModel.liter + " in the background ...");
+					syncAssignments();
+					saveInBackground("model-" + Conversion.ZeroPad(trnModel.liter, 5));
+				}
+			}
+			
+			if (option.llstep > 0 && trnModel.liter % option.llstep == 0){
+				if (checkConvergence()){
+					System.out.println("Converged at iteration " + trnModel.liter + ", stopping early");
+					trnModel.liter++;
+					break;
 				}
 			}
 		}// end iterations		
 		
+		waitForSave();
+		if (saver != null){
+			saver.shutdown();
+			saver = null;
+		}
+		if (workers != null){
+			workers.shutdown();
+			workers = null;
+		}
+		
 		System.out.println("Gibbs sampling completed!\n");
 		System.out.println("Saving the final model!\n");
-		computeTheta();
-		computePhi();
 		trnModel.liter--;
+		syncAssignments();
 		trnModel.saveModel("model-final");
 	}
 	
 	/**
-	 * Do sampling
+	 * One Gibbs sweep, resample the topic of every word of every document
+	 */
+	public void sweep(){
+		if (wordOrder != null){
+			sweepByWord();
+			return;
+		}
+		
+		// for all z_i
+		for (int m = 0; m < trnModel.M; m++){				
+			for (int n = 0; n < trnModel.data.docs[m].length; n++){
+				// z_i = z[m][n]
+				// sample from p(z_i|z_-i, w)
+				int topic = sampling(m, n);
+				trnModel.z[m].set(n, topic);
+			}// end for each word
+		}// end for each document
+	}
+	
+	/**
+	 * One Gibbs sweep in word-major order, resample the topic of every token of every word.
+	 * Any fixed visiting order is a valid systematic scan of the same chain.
+	 */
+	protected void sweepByWord(){
+		SplittableRandom rand = trnModel.rand.get(0);
+		int [] words = wordOrder.words;
+		int [] docs = wordOrder.docs;
+		for (int i = 0; i < words.length; i++){
+			wordTopics[i] = resample(docs[i], words[i], wordTopics[i], rand);
+		}
+	}
+	
+	/**
+	 * copy the topics of a word-major sweep back to z, before z is saved
+	 */
+	protected void syncAssignments(){
+		if (wordOrder != null)
+			wordOrder.scatter(wordTopics, trnModel);
+	}
+	
+	/**
+	 * Do sampling with the random stream of the first thread
 	 * @param m document number
 	 * @param n word number
 	 * @return topic id
 	 */
 	public int sampling(int m, int n){
+		return sampling(m, n, trnModel.rand.get(0));
+	}
+	
+	/**
+	 * Do sampling
+	 * @param m document number
+	 * @param n word number
+	 * @param rand random stream of the calling thread
+	 * @return topic id
+	 */
+	public int sampling(int m, int n, SplittableRandom rand){
+		return resample(m, trnModel.data.docs[m].words[n], trnModel.z[m].get(n), rand);
+	}
+	
+	/**
+	 * Do sampling of one token given its current topic
+	 * @param m document number
+	 * @param w word id
+	 * @param topic current topic of the token
+	 * @param rand random stream of the calling thread
+	 * @return new topic id
+	 */
+	protected int resample(int m, int w, int topic, SplittableRandom rand){
 		// remove z_i from the count variable
-		int topic = trnModel.z[m].get(n);
-		int w = trnModel.data.docs[m].words[n];
-		
 		trnModel.nw[w][topic] -= 1;
 		trnModel.nd[m][topic] -= 1;
 		trnModel.nwsum[topic] -= 1;
@@ -109,10 +217,8 @@ public class Estimator {
 		double Kalpha = trnModel.K * trnModel.alpha;
 		
 		//do multinominal sampling via cumulative method
-		for (int k = 0; k < trnModel.K; k++){
-			trnModel.p[k] = (trnModel.nw[w][k] + trnModel.beta)/(trnModel.nwsum[k] + Vbeta) *
-					(trnModel.nd[m][k] + trnModel.alpha)/(trnModel.ndsum[m] + Kalpha);
-		}
+		kernels.topicWeights(trnModel.nw[w], trnModel.nwsum, trnModel.nd[m], trnModel.beta, Vbeta,
+				trnModel.alpha, trnModel.ndsum[m] + Kalpha, trnModel.p, trnModel.K);
 		
 		// cumulate multinomial parameters
 		for (int k = 1; k < trnModel.K; k++){
@@ -120,7 +226,7 @@ public class Estimator {
 		}
 		
 		// scaled sample because of unnormalized p[]
-		double u = Math.random() * trnModel.p[trnModel.K - 1];
+		double u = rand.nextDouble() * trnModel.p[trnModel.K - 1];
 		
 		for (topic = 0; topic < trnModel.K; topic++){
 			if (trnModel.p[topic] > u) //sample topic w.r.t distribution p
@@ -136,19 +242,187 @@ public class Estimator {
  		return topic;
 	}
 	
-	public void computeTheta(){
-		for (int m = 0; m < trnModel.M; m++){
-			for (int k = 0; k < trnModel.K; k++){
-				trnModel.theta[m][k] = (trnModel.nd[m][k] + trnModel.alpha) / (trnModel.ndsum[m] + trnModel.K * trnModel.alpha);
+	//---------------------------------------------------------------
+	// Multiple chains
+	//---------------------------------------------------------------
+	
+	/**
+	 * sample nchains independent chains in parallel, sharing the dataset, and save the one with
+	 * the best joint log-likelihood. Chain c uses the seed of the model + c * 0x9E3779B97F4A7C15,
+	 * chain 0 is the model itself, so the output only depends on the seed and nchains.
+	 * New chains start from a random z, continued ones from the loaded z.
+	 */
+	protected void estimateChains(int nchains){
+		System.out.println("Sampling " + trnModel.niters + " iteration on " + nchains + " chains!");
+		
+		final int lastIter = trnModel.liter;
+		final Estimator [] chains = new Estimator[nchains];
+		final LogLikelihood [] likelihoods = new LogLikelihood[nchains];
+		chains[0] = this;
+		for (int c = 1; c < nchains; c++){
+			chains[c] = new Estimator();
+			chains[c].option = option;
+			chains[c].trnModel = trnModel.newChain(trnModel.seed + c * 0x9E3779B97F4A7C15L, option.est);
+			if (wordOrder != null){
+				chains[c].wordOrder = wordOrder;
+				chains[c].wordTopics = wordOrder.gather(chains[c].trnModel);
+			}
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(nchains);
+		try {
+			List<Future<?>> results = new ArrayList<Future<?>>();
+			for (int c = 0; c < nchains; c++){
+				final int chain = c;
+				results.add(pool.submit(new Runnable(){
+					public void run(){
+						Model model = chains[chain].trnModel;
+						for (model.liter = lastIter + 1; model.liter < model.niters + lastIter; model.liter++){
+							chains[chain].sweep();
+						}
+						model.liter--;
+						chains[chain].syncAssignments();
+						likelihoods[chain] = LogLikelihood.compute(model, null, 1);
+					}
+				}));
 			}
+			for (Future<?> result : results){
+				result.get();
+			}
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while sampling the chains", e);
+		}
+		catch (ExecutionException e){
+			throw new IllegalStateException("Sampling of a chain failed", e.getCause());
 		}
+		finally {
+			pool.shutdownNow();
+		}
+		
+		int best = 0;
+		for (int c = 0; c < nchains; c++){
+			System.out.println("Chain " + c + ": log-likelihood " + likelihoods[c].joint + ", perplexity " + likelihoods[c].perplexity);
+			if (likelihoods[c].joint > likelihoods[best].joint)
+				best = c;
+		}
+		
+		System.out.println("Gibbs sampling completed!\n");
+		System.out.println("Saving the final model from chain " + best + "!\n");
+		trnModel = chains[best].trnModel;
+		trnModel.saveModel("model-final");
 	}
 	
-	public void computePhi(){
-		for (int k = 0; k < trnModel.K; k++){
-			for (int w = 0; w < trnModel.V; w++){
-				trnModel.phi[k][w] = (trnModel.nw[w][k] + trnModel.beta) / (trnModel.nwsum[k] + trnModel.V * trnModel.beta);
+	//---------------------------------------------------------------
+	// Convergence
+	//---------------------------------------------------------------
+	
+	/**
+	 * compute the log-likelihood and perplexity, append them to the train log
+	 * @return true if the log-likelihood changed by less than option.convergence (relative)
+	 * since the previous computation
+	 */
+	protected boolean checkConvergence(){
+		int nthreads = trnModel.nthreads;
+		if (nthreads > 1 && workers == null){
+			workers = Executors.newFixedThreadPool(nthreads, new ThreadFactory(){
+				public Thread newThread(Runnable r){
+					Thread thread = new Thread(r, "loglikelihood");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		
+		LogLikelihood ll = LogLikelihood.compute(trnModel, workers, nthreads);
+		double change = Math.abs((ll.joint - lastLikelihood) / lastLikelihood);
+		System.out.println("Iteration " + trnModel.liter + ": log-likelihood " + ll.joint + ", perplexity " + ll.perplexity
+				+ (Double.isNaN(lastLikelihood) ? "" : ", relative change " + change));
+		writeTrainLog(ll);
+		
+		boolean converged = option.convergence > 0 && !Double.isNaN(lastLikelihood) && change < option.convergence;
+		lastLikelihood = ll.joint;
+		return converged;
+	}
+	
+	/**
+	 * append a line "iteration loglikelihood perplexity" to the train log, a new
+	 * estimation starts a new log
+	 */
+	private void writeTrainLog(LogLikelihood ll){
+		File log = new File(option.dir, trnModel.trainlogFile);
+		boolean start = Double.isNaN(lastLikelihood) && option.est;
+		try {
+			BufferedWriter writer = new BufferedWriter(new FileWriter(log, !start));
+			if (start)
+				writer.write("iteration loglikelihood perplexity\n");
+			writer.write(trnModel.liter + " " + ll.joint + " " + ll.perplexity + "\n");
+			writer.close();
+		}
+		catch (Exception e){
+			System.out.println("Error while writing the train log: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+	
+	//---------------------------------------------------------------
+	// Checkpoints
+	//---------------------------------------------------------------
+	
+	/**
+	 * save a snapshot of the model on the background thread. The snapshot is only taken
+	 * once the previous checkpoint is written, so a slow disk only holds one snapshot
+	 */
+	private void saveInBackground(final String modelName){
+		waitForSave();
+		final Model snapshot = trnModel.snapshot();
+		if (saver == null){
+			saver = Executors.newSingleThreadExecutor(new ThreadFactory(){
+				public Thread newThread(Runnable r){
+					Thread thread = new Thread(r, "checkpoint-saver");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		
+		pendingSave = saver.submit(new Runnable(){
+			public void run(){
+				if (!snapshot.saveModel(modelName))
+					System.out.println("Fail to save the checkpoint " + modelName);
 			}
+		});
+	}
+	
+	/**
+	 * wait until the checkpoint in flight, if any, is written
+	 */
+	private void waitForSave(){
+		if (pendingSave == null)
+			return;
+		
+		try {
+			pendingSave.get();
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
 		}
+		catch (ExecutionException e){
+			System.out.println("Error while saving a checkpoint: " + e.getCause());
+			e.getCause().printStackTrace();
+		}
+		pendingSave = null;
+	}
+	
+	/**
+	 * materialize theta and phi of the training model, saving does not need them
+	 */
+	public void computeTheta(){
+		trnModel.getTheta();
+	}
+	
+	public void computePhi(){
+		trnModel.getPhi();
 	}
 }
@@ -0,0 +1,233 @@
+package jgibblda;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * In-memory Gibbs inference of single documents against a trained model,
+ * for request paths that featurize one new text at a time. The trained
+ * counts are only read, and every calling thread samples in its own pooled
+ * buffers, so one session can be shared by concurrent callers. Nothing is
+ * written to disk and theta is returned directly.
+ *
+ * The sampling rule is the one of Inferencer, each document being its own
+ * new dataset.
+ */
+public class InferenceSession {
+
+	//---------------------------------------------------------------
+	// Instance Variables
+	//---------------------------------------------------------------
+
+	private final Dictionary dict;	// global dictionary, read only
+	private final int [][] trnNw;		// trained word-topic counts, size V x K, read only
+	private final int [] trnNwsum;	// trained topic counts, size K, read only
+	private final int K, V;
+	private final double alpha, beta;
+	private final int niters;
+
+	// each thread gets its random stream from this root, guarded by this
+	private final SplittableRandom root;
+
+	private final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>(){
+		protected Buffers initialValue(){
+			return new Buffers(nextStream());
+		}
+	};
+
+	//---------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------
+
+	/**
+	 * @param trnModel trained model, loaded with initEstimatedModel, it must not change afterwards
+	 * @param niters number of Gibbs sweeps per document
+	 * @param seed seed of the random streams, negative for a seed from the clock
+	 */
+	public InferenceSession(Model trnModel, int niters, long seed){
+		this.dict = trnModel.data.localDict;
+		this.trnNw = trnModel.nw;
+		this.trnNwsum = trnModel.nwsum;
+		this.K = trnModel.K;
+		this.V = trnModel.V;
+		this.alpha = trnModel.alpha;
+		this.beta = trnModel.beta;
+		this.niters = Math.max(1, niters);
+		this.root = new SplittableRandom(RandomStreams.resolveSeed(seed));
+	}
+
+	/**
+	 * load the model named in option (dir and modelName) and open a session on it
+	 * @return the session, null if the model could not be loaded
+	 */
+	public static InferenceSession open(LDACmdOption option, int niters){
+		Model trnModel = new Model();
+		if (!trnModel.initEstimatedModel(option))
+			return null;
+		return new InferenceSession(trnModel, niters, option.seed);
+	}
+
+	//---------------------------------------------------------------
+	// Inference
+	//---------------------------------------------------------------
+
+	/**
+	 * topic distribution of a new document, words are separated by blanks as in
+	 * the dataset files and words unknown to the model are ignored
+	 * @return theta, size K, owned by the caller
+	 */
+	public double [] infer(String doc){
+		return infer(doc, new double[K]);
+	}
+
+	/**
+	 * same as infer(doc), theta is written into the given array of size K
+	 */
+	public double [] infer(String doc, double [] theta){
+		Buffers buf = buffers.get();
+		buf.setDoc(doc);
+		sample(buf);
+
+		double Kalpha = K * alpha;
+		for (int k = 0; k < K; k++){
+			theta[k] = (buf.nd[k] + alpha) / (buf.length + Kalpha);
+		}
+		return theta;
+	}
+
+	/**
+	 * niters Gibbs sweeps over the document in buf, from a random init
+	 */
+	private void sample(Buffers buf){
+		int [] words = buf.words;
+		int [] local = buf.local;
+		int [] z = buf.z;
+		int [] nd = buf.nd;
+		int [] nwsum = buf.nwsum;
+		int [][] nw = buf.nw;
+		double [] p = buf.p;
+		SplittableRandom rand = buf.rand;
+		int N = buf.length;
+
+		for (int n = 0; n < N; n++){
+			int topic = rand.nextInt(K);
+			z[n] = topic;
+			nw[local[n]][topic] += 1;
+			nd[topic] += 1;
+			nwsum[topic] += 1;
+		}
+
+		double Vbeta = V * beta;
+		double Kalpha = K * alpha;
+
+		for (int iter = 0; iter < niters; iter++){
+			for (int n = 0; n < N; n++){
+				// remove z_n from the count variables
+				int topic = z[n];
+				int [] trnCounts = trnNw[words[n]];
+				int [] newCounts = nw[local[n]];
+				newCounts[topic] -= 1;
+				nd[topic] -= 1;
+				nwsum[topic] -= 1;
+
+				// cumulative multinomial, ndsum is N - 1 for every token of the document
+				double sum = 0;
+				for (int k = 0; k < K; k++){
+					sum += (trnCounts[k] + newCounts[k] + beta) / (trnNwsum[k] + nwsum[k] + Vbeta) *
+							(nd[k] + alpha) / (N - 1 + Kalpha);
+					p[k] = sum;
+				}
+
+				double u = rand.nextDouble() * p[K - 1];
+				for (topic = 0; topic < K - 1; topic++){
+					if (p[topic] > u)
+						break;
+				}
+
+				// add the new z_n to the count variables
+				z[n] = topic;
+				newCounts[topic] += 1;
+				nd[topic] += 1;
+				nwsum[topic] += 1;
+			}
+		}
+	}
+
+	private synchronized SplittableRandom nextStream(){
+		return root.split();
+	}
+
+	//---------------------------------------------------------------
+	// Per-thread buffers
+	//---------------------------------------------------------------
+
+	/**
+	 * sampling state of one document, grown on demand and reused by the next
+	 * document of the same thread
+	 */
+	private class Buffers {
+		final SplittableRandom rand;
+		final int [] nd = new int[K];
+		final int [] nwsum = new int[K];
+		final double [] p = new double[K];
+
+		int length;			// number of known words in the document
+		int distinct;		// number of distinct known words
+		int [] words = new int[64];		// global word id of each token
+		int [] local = new int[64];		// local word id of each token
+		int [] z = new int[64];			// topic of each token
+		int [][] nw = new int[16][K];	// local word-topic counts
+
+		// local id of every global word, -1 if not in the document, reset after each document
+		final int [] localOf = new int[V];
+
+		Buffers(SplittableRandom rand){
+			this.rand = rand;
+			Arrays.fill(localOf, -1);
+		}
+
+		/**
+		 * tokenize the document and clear the counts
+		 */
+		void setDoc(String doc){
+			// forget the words of the previous document
+			for (int n = 0; n < length; n++){
+				localOf[words[n]] = -1;
+			}
+			for (int l = 0; l < distinct; l++){
+				Arrays.fill(nw[l], 0);
+			}
+			Arrays.fill(nd, 0);
+			Arrays.fill(nwsum, 0);
+			length = 0;
+			distinct = 0;
+
+			for (String word : doc.split("[ \\t\\n]")){
+				Integer id = dict.getID(word);
+				if (id == null)
+					continue;
+
+				int w = id;
+				if (localOf[w] < 0){
+					if (distinct == nw.length){
+						int [][] grown = Arrays.copyOf(nw, 2 * distinct);
+						for (int l = distinct; l < grown.length; l++){
+							grown[l] = new int[K];
+						}
+						nw = grown;
+					}
+					localOf[w] = distinct++;
+				}
+
+				if (length == words.length){
+					words = Arrays.copyOf(words, 2 * length);
+					local = Arrays.copyOf(local, 2 * length);
+					z = Arrays.copyOf(z, 2 * length);
+				}
+				words[length] = w;
+				local[length] = localOf[w];
+				length++;
+			}
+		}
+	}
+}
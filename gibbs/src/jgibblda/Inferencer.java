@@ -32,8 +32,16 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Inferencer {	
 	// Train model
@@ -44,6 +52,13 @@ public class Inferencer {
 	private Model newModel;
 	public int niters = 100;
 	
+	// alias sampling: one table per trained word over the frozen trained phi, null for the exact sampler
+	private AliasTable wordTables;
+	public int mhsteps = 2;
+	
+	// threads sharing the new documents in sample(), 1 for the exact serial sampler
+	public int samplingThreads = 1;
+	
 	//-----------------------------------------------------
 	// Init method
 	//-----------------------------------------------------
@@ -55,12 +70,23 @@ public class Inferencer {
 			return false;		
 		
 		globalDict = trnModel.data.localDict;
-		computeTrnTheta();
-		computeTrnPhi();
+		
+		if (option.alias){
+			buildWordTables();
+			mhsteps = Math.max(1, option.mhsteps);
+		}
+		samplingThreads = Math.max(1, option.infthreads);
 		
 		return true;
 	}
 	
+	/**
+	 * in-memory session on the trained model for single documents, see InferenceSession
+	 */
+	public InferenceSession newSession(){
+		return new InferenceSession(trnModel, niters, option.seed);
+	}
+	
 	//inference new model ~ getting data from a specified dataset
 	public Model inference( LDADataset newData){
 		System.out.println("init new model");
@@ -70,25 +96,11 @@ public class Inferencer {
 		this.newModel = newModel;		
 		
 		System.out.println("Sampling " + niters + " iteration for inference!");		
-		for (newModel.liter = 1; newModel.liter <= niters; newModel.liter++){
-			//System.out.println("Iteration " + newModel.liter + " ...");
-			
-			// for all newz_i
-			for (int m = 0; m < newModel.M; ++m){
-				for (int n = 0; n < newModel.data.docs[m].length; n++){
-					// (newz_i = newz[m][n]
-					// sample from p(z_i|z_-1,w)
-					int topic = infSampling(m, n);
-					newModel.z[m].set(n, topic);
-				}
-			}//end foreach new doc
-			
-		}// end iterations
+		sample();
 		
 		System.out.println("Gibbs sampling for inference completed!");
 		
-		computeNewTheta();
-		computeNewPhi();
+		// theta and phi are computed from the counts when asked for
 		newModel.liter--;
 		return this.newModel;
 	}
@@ -112,45 +124,176 @@ public class Inferencer {
 		
 		System.out.println("Sampling " + niters + " iteration for inference!");
 		
-		for (newModel.liter = 1; newModel.liter <= niters; newModel.liter++){
-			//System.out.println("Iteration " + newModel.liter + " ...");
-			
-			// for all newz_i
-			for (int m = 0; m < newModel.M; ++m){
-				for (int n = 0; n < newModel.data.docs[m].length; n++){
-					// (newz_i = newz[m][n]
-					// sample from p(z_i|z_-1,w)
-					int topic = infSampling(m, n);
-					newModel.z[m].set(n, topic);
-				}
-			}//end foreach new doc
-			
-		}// end iterations
+		sample();
 		
 		System.out.println("Gibbs sampling for inference completed!");		
 		System.out.println("Saving the inference outputs!");
 		
-		computeNewTheta();
-		computeNewPhi();
 		newModel.liter--;
 		newModel.saveModel(newModel.dfile + "." + newModel.modelName);		
 		
 		return newModel;
 	}
 	
+	//-----------------------------------------------------
+	// Sweeps
+	//-----------------------------------------------------
+	
+	/**
+	 * niters sweeps over the new documents, exact on a single thread, sharded over
+	 * samplingThreads threads (-infthreads) when there is more than one
+	 */
+	protected void sample(){
+		int nthreads = Math.min(Math.min(samplingThreads, newModel.rand.size()), newModel.M);
+		if (nthreads <= 1){
+			for (newModel.liter = 1; newModel.liter <= niters; newModel.liter++){
+				sweep(0, newModel.M, newModel.rand.get(0), newModel.nw, newModel.nwsum, newModel.p);
+			}
+			return;
+		}
+		
+		// the copies of nw and nwsum of every thread, refreshed at each sweep
+		int [][][] nwCopies = new int[nthreads][newModel.V][newModel.K];
+		int [][] nwsumCopies = new int[nthreads][newModel.K];
+		
+		ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+		try {
+			for (newModel.liter = 1; newModel.liter <= niters; newModel.liter++){
+				parallelSweep(pool, nwCopies, nwsumCopies);
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	/**
+	 * resample the words of the documents [start, end)
+	 */
+	protected void sweep(int start, int end, SplittableRandom rand, int [][] nw, int [] nwsum, double [] p){
+		// for all newz_i
+		for (int m = start; m < end; ++m){
+			for (int n = 0; n < newModel.data.docs[m].length; n++){
+				// (newz_i = newz[m][n]
+				// sample from p(z_i|z_-1,w)
+				int topic = (wordTables != null) ? infSamplingMH(m, n, rand, nw, nwsum)
+						: infSampling(m, n, rand, nw, nwsum, p);
+				newModel.z[m].set(n, topic);
+			}
+		}//end foreach new doc
+	}
+	
+	/**
+	 * one sweep with the documents split in contiguous shards, one per thread. The documents of
+	 * the new dataset only interact through nw and nwsum, so each thread samples its shard against
+	 * its own copy of them, taken at the start of the sweep, and the changes of all the threads
+	 * are added back at the end of the sweep (approximate distributed Gibbs sampling).
+	 * Thread t draws from random stream t, the same seed and -infthreads give the same output.
+	 */
+	protected void parallelSweep(ExecutorService pool, final int [][][] nwCopies, final int [][] nwsumCopies){
+		final int nthreads = nwCopies.length;
+		final int M = newModel.M, V = newModel.V, K = newModel.K;
+		
+		List<Callable<Object>> shards = new ArrayList<Callable<Object>>();
+		for (int t = 0; t < nthreads; t++){
+			final int thread = t;
+			shards.add(new Callable<Object>(){
+				public Object call(){
+					int [][] nw = nwCopies[thread];
+					int [] nwsum = nwsumCopies[thread];
+					for (int w = 0; w < V; w++){
+						System.arraycopy(newModel.nw[w], 0, nw[w], 0, K);
+					}
+					System.arraycopy(newModel.nwsum, 0, nwsum, 0, K);
+					
+					sweep(M * thread / nthreads, M * (thread + 1) / nthreads, newModel.rand.get(thread), nw, nwsum, new double[K]);
+					return null;
+				}
+			});
+		}
+		runAll(pool, shards);
+		
+		// nw += sum over the threads of (copy - nw), split by words
+		List<Callable<Object>> merges = new ArrayList<Callable<Object>>();
+		for (int t = 0; t < nthreads; t++){
+			final int start = V * t / nthreads;
+			final int end = V * (t + 1) / nthreads;
+			merges.add(new Callable<Object>(){
+				public Object call(){
+					for (int w = start; w < end; w++){
+						mergeCounts(newModel.nw[w], w, nwCopies);
+					}
+					return null;
+				}
+			});
+		}
+		runAll(pool, merges);
+		
+		int [] nwsum = newModel.nwsum;
+		for (int k = 0; k < K; k++){
+			int sum = nwsum[k];
+			for (int t = 0; t < nthreads; t++){
+				sum += nwsumCopies[t][k] - nwsum[k];
+			}
+			nwsum[k] = sum;
+		}
+	}
+	
+	private static void mergeCounts(int [] counts, int w, int [][][] copies){
+		for (int k = 0; k < counts.length; k++){
+			int sum = counts[k];
+			for (int t = 0; t < copies.length; t++){
+				sum += copies[t][w][k] - counts[k];
+			}
+			counts[k] = sum;
+		}
+	}
+	
+	private static void runAll(ExecutorService pool, List<Callable<Object>> tasks){
+		try {
+			for (Future<Object> result : pool.invokeAll(tasks)){
+				result.get();
+			}
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted during parallel inference", e);
+		}
+		catch (ExecutionException e){
+			throw new IllegalStateException("Parallel inference failed", e.getCause());
+		}
+	}
+	
 	/**
 	 * do sampling for inference
 	 * m: document number
 	 * n: word number?
 	 */
 	protected int infSampling(int m, int n){
+		if (wordTables != null)
+			return infSamplingMH(m, n, newModel.rand.get(0), newModel.nw, newModel.nwsum);
+		return infSampling(m, n, newModel.rand.get(0));
+	}
+	
+	/**
+	 * do sampling for inference with the random stream of the calling thread
+	 */
+	protected int infSampling(int m, int n, SplittableRandom rand){
+		return infSampling(m, n, rand, newModel.nw, newModel.nwsum, newModel.p);
+	}
+	
+	/**
+	 * do sampling for inference against the given new word-topic counts,
+	 * those of the model or the copy of a thread, p is the buffer of the thread
+	 */
+	protected int infSampling(int m, int n, SplittableRandom rand, int [][] nw, int [] nwsum, double [] p){
 		// remove z_i from the count variables
 		int topic = newModel.z[m].get(n);
 		int _w = newModel.data.docs[m].words[n];
-		int w = newModel.data.lid2gid.get(_w);
-		newModel.nw[_w][topic] -= 1;
+		int w = newModel.data.localToGlobal[_w];
+		nw[_w][topic] -= 1;
 		newModel.nd[m][topic] -= 1;
-		newModel.nwsum[topic] -= 1;
+		nwsum[topic] -= 1;
 		newModel.ndsum[m] -= 1;
 		
 		double Vbeta = trnModel.V * newModel.beta;
@@ -158,65 +301,134 @@ public class Inferencer {
 		
 		// do multinomial sampling via cummulative method		
 		for (int k = 0; k < newModel.K; k++){			
-			newModel.p[k] = (trnModel.nw[w][k] + newModel.nw[_w][k] + newModel.beta)/(trnModel.nwsum[k] +  newModel.nwsum[k] + Vbeta) *
+			p[k] = (trnModel.nw[w][k] + nw[_w][k] + newModel.beta)/(trnModel.nwsum[k] +  nwsum[k] + Vbeta) *
 					(newModel.nd[m][k] + newModel.alpha)/(newModel.ndsum[m] + Kalpha);
 		}
 		
 		// cummulate multinomial parameters
 		for (int k = 1; k < newModel.K; k++){
-			newModel.p[k] += newModel.p[k - 1];
+			p[k] += p[k - 1];
 		}
 		
 		// scaled sample because of unnormalized p[]
-		double u = Math.random() * newModel.p[newModel.K - 1];
+		double u = rand.nextDouble() * p[newModel.K - 1];
 		
 		for (topic = 0; topic < newModel.K; topic++){
-			if (newModel.p[topic] > u)
+			if (p[topic] > u)
 				break;
 		}
 		
 		// add newly estimated z_i to count variables
-		newModel.nw[_w][topic] += 1;
+		nw[_w][topic] += 1;
 		newModel.nd[m][topic] += 1;
-		newModel.nwsum[topic] += 1;
+		nwsum[topic] += 1;
 		newModel.ndsum[m] += 1;
 		
 		return topic;
 	}
 	
-	protected void computeNewTheta(){
-		for (int m = 0; m < newModel.M; m++){
-			for (int k = 0; k < newModel.K; k++){
-				newModel.theta[m][k] = (newModel.nd[m][k] + newModel.alpha) / (newModel.ndsum[m] + newModel.K * newModel.alpha);
-			}//end foreach topic
-		}//end foreach new document
-	}
-	
-	protected void computeNewPhi(){
-		for (int k = 0; k < newModel.K; k++){
-			for (int _w = 0; _w < newModel.V; _w++){
-				Integer id = newModel.data.lid2gid.get(_w);
-				
-				if (id != null){
-					newModel.phi[k][_w] = (trnModel.nw[id][k] + newModel.nw[_w][k] + newModel.beta) / (newModel.nwsum[k] + newModel.nwsum[k] + trnModel.V * newModel.beta);
-				}
-			}//end foreach word
-		}// end foreach topic
-	}
+	//-----------------------------------------------------
+	// Alias sampling
+	//-----------------------------------------------------
 	
-	protected void computeTrnTheta(){
-		for (int m = 0; m < trnModel.M; m++){
-			for (int k = 0; k < trnModel.K; k++){
-				trnModel.theta[m][k] = (trnModel.nd[m][k] + trnModel.alpha) / (trnModel.ndsum[m] + trnModel.K * trnModel.alpha);
+	/**
+	 * alias table of every trained word over (trnModel.nw[w][k] + beta) / (trnModel.nwsum[k] + V * beta),
+	 * built once since the trained counts do not change during inference
+	 */
+	protected void buildWordTables(){
+		int K = trnModel.K;
+		double Vbeta = trnModel.V * trnModel.beta;
+		double [] weights = new double[K];
+		
+		wordTables = new AliasTable(trnModel.V, K);
+		for (int w = 0; w < trnModel.V; w++){
+			for (int k = 0; k < K; k++){
+				weights[k] = (trnModel.nw[w][k] + trnModel.beta) / (trnModel.nwsum[k] + Vbeta);
 			}
+			wordTables.build(w, weights);
 		}
 	}
 	
-	protected void computeTrnPhi(){
-		for (int k = 0; k < trnModel.K; k++){
-			for (int w = 0; w < trnModel.V; w++){
-				trnModel.phi[k][w] = (trnModel.nw[w][k] + trnModel.beta) / (trnModel.nwsum[k] + trnModel.V * trnModel.beta);
+	/**
+	 * Metropolis-Hastings sampling for inference, alternating two proposals, both drawn in O(1):
+	 * the trained phi of the word from its alias table, and the document proposal
+	 * nd[m][k] + alpha (the topic of a random word of the document, or a uniform topic).
+	 * Each step is accepted against the same conditional as infSampling, evaluated at two topics only.
+	 */
+	protected int infSamplingMH(int m, int n, SplittableRandom rand, int [][] nw, int [] nwsum){
+		// remove z_i from the count variables
+		int orig = newModel.z[m].get(n);
+		int _w = newModel.data.docs[m].words[n];
+		int w = newModel.data.localToGlobal[_w];
+		int [] nwNew = nw[_w];
+		int [] nwTrn = trnModel.nw[w];
+		int [] nd = newModel.nd[m];
+		nwNew[orig] -= 1;
+		nd[orig] -= 1;
+		nwsum[orig] -= 1;
+		
+		double beta = newModel.beta;
+		double alpha = newModel.alpha;
+		double Vbeta = trnModel.V * beta;
+		int length = newModel.data.docs[m].length;
+		double Kalpha = newModel.K * alpha;
+		
+		int topic = orig;
+		double pTopic = (nwTrn[topic] + nwNew[topic] + beta) / (trnModel.nwsum[topic] + nwsum[topic] + Vbeta) * (nd[topic] + alpha);
+		
+		for (int step = 0; step < mhsteps; step++){
+			int t;
+			double ratio;
+			
+			if (step % 2 == 0){
+				// word proposal
+				t = wordTables.sample(w, rand);
+				if (t == topic)
+					continue;
+				double pT = (nwTrn[t] + nwNew[t] + beta) / (trnModel.nwsum[t] + nwsum[t] + Vbeta) * (nd[t] + alpha);
+				double qTopic = (nwTrn[topic] + beta) / (trnModel.nwsum[topic] + Vbeta);
+				double qT = (nwTrn[t] + beta) / (trnModel.nwsum[t] + Vbeta);
+				ratio = (pT * qTopic) / (pTopic * qT);
+				if (ratio >= 1 || rand.nextDouble() < ratio){
+					topic = t;
+					pTopic = pT;
+				}
+			}
+			else {
+				// document proposal, the counts it draws from still include z_i = orig
+				if (rand.nextDouble() * (length + Kalpha) < length)
+					t = newModel.z[m].get(rand.nextInt(length));
+				else
+					t = rand.nextInt(newModel.K);
+				if (t == topic)
+					continue;
+				double pT = (nwTrn[t] + nwNew[t] + beta) / (trnModel.nwsum[t] + nwsum[t] + Vbeta) * (nd[t] + alpha);
+				double qTopic = nd[topic] + (topic == orig ? 1 : 0) + alpha;
+				double qT = nd[t] + (t == orig ? 1 : 0) + alpha;
+				ratio = (pT * qTopic) / (pTopic * qT);
+				if (ratio >= 1 || rand.nextDouble() < ratio){
+					topic = t;
+					pTopic = pT;
+				}
 			}
 		}
+		
+		// add newly estimated z_i to count variables
+		nwNew[topic] += 1;
+		nd[topic] += 1;
+		nwsum[topic] += 1;
+		
+		return topic;
+	}
+	
+	/**
+	 * materialize theta and phi of the last inference model, see Model.getTheta() and Model.getPhi()
+	 */
+	protected void computeNewTheta(){
+		newModel.getTheta();
+	}
+	
+	protected void computeNewPhi(){
+		newModel.getPhi();
 	}
 }
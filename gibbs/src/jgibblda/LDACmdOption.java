@@ -43,6 +43,36 @@ public class LDACmdOption {
 	@Option(name="-withrawdata", usage="Specify whether we include raw data in the input")
 	public boolean withrawdata = false;
 	
+	@Option(name="-nthreads", usage="Specify the number of threads")
+	public int nthreads = Runtime.getRuntime().availableProcessors();
+	
+	@Option(name="-infthreads", usage="Specify the number of threads sharing the new documents in inference sampling, over 1 the sampling is approximate (AD-LDA) and its output depends on this number (default: 1, exact)")
+	public int infthreads = 1;
+	
+	@Option(name="-seed", handler=LongOptionHandler.class, usage="Specify the random seed, the same seed and number of threads give the same output, the seed of a run is saved in its .others file (default: from the clock)")
+	public long seed = -1;
+	
+	@Option(name="-llstep", usage="Specify the number of iterations between two computations of the log-likelihood and perplexity, written to the train log (default: 0, never)")
+	public int llstep = 0;
+	
+	@Option(name="-convergence", usage="Specify the relative change of the log-likelihood between two computations under which estimation stops early (default: 0, never)")
+	public double convergence = 0;
+	
+	@Option(name="-nchains", usage="Specify the number of independent chains sampled in parallel, the one with the best log-likelihood is saved, without checkpoints or early stop (default: 1)")
+	public int nchains = 1;
+	
+	@Option(name="-order", usage="Specify the order of the tokens in an estimation sweep: doc (document by document) or word (word by word, better cache locality of the word-topic counts) (default: doc)")
+	public String order = "doc";
+	
+	@Option(name="-alias", usage="Specify whether inference samples with alias tables of the trained model and Metropolis-Hastings, O(1) instead of O(K) per word")
+	public boolean alias = false;
+	
+	@Option(name="-mhsteps", usage="Specify the number of Metropolis-Hastings steps per word with -alias (default: 2)")
+	public int mhsteps = 2;
+	
+	@Option(name="-tassign", usage="Specify the format of the saved topic assignments: binary (mapped on load), text or both (default: binary)")
+	public String tassignFormat = "binary";
+	
 	@Option(name="-wordmap", usage="Specify the wordmap file")
 	public String wordMapFileName = "wordmap.txt";
 }
@@ -30,8 +30,7 @@ package jgibblda;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Vector;
 
 public class LDADataset {
@@ -44,9 +43,9 @@ public class LDADataset {
 	public int M; 			 		// number of documents
 	public int V;			 		// number of words
 	
-	// map from local coordinates (id) to global ones 
+	// map from local coordinates (id) to global ones, localToGlobal[_id] for _id < V
 	// null if the global dictionary is not set
-	public Map<Integer, Integer> lid2gid; 
+	public int [] localToGlobal; 
 	
 	//link to a global dictionary (optional), null for train data, not null for test data
 	public Dictionary globalDict;	 		
@@ -61,7 +60,7 @@ public class LDADataset {
 		docs = null;
 	
 		globalDict = null;
-		lid2gid = null;
+		localToGlobal = null;
 	}
 	
 	public LDADataset(int M){
@@ -71,7 +70,7 @@ public class LDADataset {
 		docs = new Document[M];	
 		
 		globalDict = null;
-		lid2gid = null;
+		localToGlobal = null;
 	}
 	
 	public LDADataset(int M, Dictionary globalDict){
@@ -81,7 +80,7 @@ public class LDADataset {
 		docs = new Document[M];	
 		
 		this.globalDict = globalDict;
-		lid2gid = new HashMap<Integer, Integer>();
+		localToGlobal = new int[16];
 	}
 	
 	//-------------------------------------------------------------
@@ -109,20 +108,19 @@ public class LDADataset {
 			Vector<Integer> ids = new Vector<Integer>();
 			
 			for (String word : words){
-				int _id = localDict.word2id.size();
-				
-				if (localDict.contains(word))		
-					_id = localDict.getID(word);
-								
 				if (globalDict != null){
 					//get the global id					
 					Integer id = globalDict.getID(word);
-					//System.out.println(id);
 					
 					if (id != null){
-						localDict.addWord(word);
-						
-						lid2gid.put(_id, id);
+						Integer _id = localDict.getID(word);
+						if (_id == null){
+							_id = localDict.addWord(word);
+							
+							if (_id == localToGlobal.length)
+								localToGlobal = Arrays.copyOf(localToGlobal, 2 * _id);
+							localToGlobal[_id] = id;
+						}
 						ids.add(_id);
 					}
 					else { //not in global dictionary
@@ -130,8 +128,7 @@ public class LDADataset {
 					}
 				}
 				else {
-					localDict.addWord(word);
-					ids.add(_id);
+					ids.add(localDict.addWord(word));
 				}
 			}
 			
@@ -187,6 +184,22 @@ public class LDADataset {
 		}
 	}
 	
+	/**
+	 * read a dataset from a file with several threads (see DatasetReader), create new dictionary
+	 * @return dataset if success and null otherwise
+	 */
+	public static LDADataset readDataSet(String filename, int nthreads){
+		return DatasetReader.read(filename, null, nthreads);
+	}
+	
+	/**
+	 * read a dataset from a file with a preknown vocabulary, with several threads (see DatasetReader)
+	 * @return dataset if success and null otherwise
+	 */
+	public static LDADataset readDataSet(String filename, Dictionary dict, int nthreads){
+		return DatasetReader.read(filename, dict, nthreads);
+	}
+	
 	/**
 	 *  read a dataset from a stream, create new dictionary
 	 *  @return dataset if success and null otherwise
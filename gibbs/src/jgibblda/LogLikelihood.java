@@ -0,0 +1,175 @@
+package jgibblda;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Convergence measures of a Gibbs chain, computed from the counts of a model:
+ * the joint log-likelihood log p(w, z) of the collapsed model (Griffiths and
+ * Steyvers 2004), and the perplexity of the training words under the current
+ * theta and phi. The sums are split over words and documents on a pool.
+ */
+public class LogLikelihood {
+
+	//---------------------------------------------------------------
+	// Instance Variables
+	//---------------------------------------------------------------
+
+	public double joint;		// log p(w, z)
+	public double perplexity;	// exp(- sum over the words of log p(w | d) / number of words)
+
+	//---------------------------------------------------------------
+	// Computation
+	//---------------------------------------------------------------
+
+	/**
+	 * @param model model whose counts are measured, they must not change meanwhile
+	 * @param pool pool the sums are split on, null to compute them on the calling thread
+	 * @param nthreads number of parts of each sum
+	 */
+	public static LogLikelihood compute(final Model model, ExecutorService pool, int nthreads){
+		final int M = model.M, V = model.V, K = model.K;
+		final double alpha = model.alpha, beta = model.beta;
+		final double lgAlpha = logGamma(alpha), lgBeta = logGamma(beta);
+		nthreads = Math.max(1, nthreads);
+
+		// log p(w | z): sum over the words, then the topic normalizers
+		double wordPart = sum(pool, nthreads, V, new Range(){
+			public double sum(int start, int end){
+				double s = 0;
+				for (int w = start; w < end; w++){
+					int [] counts = model.nw[w];
+					for (int k = 0; k < K; k++){
+						s += (counts[k] == 0) ? lgBeta : logGamma(counts[k] + beta);
+					}
+				}
+				return s;
+			}
+		});
+		double topicPart = K * logGamma(V * beta);
+		for (int k = 0; k < K; k++){
+			topicPart -= logGamma(model.nwsum[k] + V * beta);
+		}
+
+		// log p(z): sum over the documents
+		double docPart = sum(pool, nthreads, M, new Range(){
+			public double sum(int start, int end){
+				double s = 0;
+				for (int m = start; m < end; m++){
+					int [] counts = model.nd[m];
+					for (int k = 0; k < K; k++){
+						s += (counts[k] == 0) ? lgAlpha : logGamma(counts[k] + alpha);
+					}
+					s -= logGamma(model.ndsum[m] + K * alpha);
+				}
+				return s;
+			}
+		});
+
+		LogLikelihood ll = new LogLikelihood();
+		ll.joint = wordPart - (double) V * K * lgBeta + topicPart
+				+ docPart + M * (logGamma(K * alpha) - K * lgAlpha);
+
+		// perplexity of the training words, phi is computed once per topic and word
+		final double [] phiNorm = new double[K];
+		for (int k = 0; k < K; k++){
+			phiNorm[k] = 1.0 / (model.nwsum[k] + V * beta);
+		}
+		double logProb = sum(pool, nthreads, M, new Range(){
+			public double sum(int start, int end){
+				double s = 0;
+				for (int m = start; m < end; m++){
+					int [] nd = model.nd[m];
+					double thetaNorm = 1.0 / (model.ndsum[m] + K * alpha);
+					int [] words = model.data.docs[m].words;
+					for (int n = 0; n < model.data.docs[m].length; n++){
+						int [] nw = model.nw[words[n]];
+						double p = 0;
+						for (int k = 0; k < K; k++){
+							p += (nd[k] + alpha) * (nw[k] + beta) * phiNorm[k];
+						}
+						s += Math.log(p * thetaNorm);
+					}
+				}
+				return s;
+			}
+		});
+		long N = 0;
+		for (int m = 0; m < M; m++){
+			N += model.data.docs[m].length;
+		}
+		ll.perplexity = Math.exp(-logProb / Math.max(1, N));
+
+		return ll;
+	}
+
+	private interface Range {
+		double sum(int start, int end);
+	}
+
+	/**
+	 * sum of a range function over [0, size) split in nthreads parts
+	 */
+	private static double sum(ExecutorService pool, int nthreads, final int size, final Range range){
+		if (pool == null || nthreads == 1)
+			return range.sum(0, size);
+
+		List<Callable<Double>> parts = new ArrayList<Callable<Double>>();
+		for (int t = 0; t < nthreads; t++){
+			final int start = (int) ((long) size * t / nthreads);
+			final int end = (int) ((long) size * (t + 1) / nthreads);
+			parts.add(new Callable<Double>(){
+				public Double call(){
+					return range.sum(start, end);
+				}
+			});
+		}
+
+		try {
+			double s = 0;
+			for (Future<Double> part : pool.invokeAll(parts)){
+				s += part.get();
+			}
+			return s;
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while computing the log-likelihood", e);
+		}
+		catch (ExecutionException e){
+			throw new IllegalStateException("Log-likelihood computation failed", e.getCause());
+		}
+	}
+
+	//---------------------------------------------------------------
+	// Log gamma
+	//---------------------------------------------------------------
+
+	private static final double [] LANCZOS = {
+		0.99999999999980993, 676.5203681218851, -1259.1392167224028,
+		771.32342877765313, -176.61502916214059, 12.507343278686905,
+		-0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7
+	};
+
+	private static final double HALF_LOG_2PI = 0.5 * Math.log(2 * Math.PI);
+
+	/**
+	 * log of the gamma function for x > 0 (Lanczos approximation, g = 7)
+	 */
+	public static double logGamma(double x){
+		if (x < 0.5)
+			return logGamma(x + 1) - Math.log(x);
+
+		x -= 1;
+		double a = LANCZOS[0];
+		double t = x + 7.5;
+		for (int i = 1; i < LANCZOS.length; i++){
+			a += LANCZOS[i] / (x + i);
+		}
+		return HALF_LOG_2PI + (x + 0.5) * Math.log(t) - t + Math.log(a);
+	}
+}
@@ -0,0 +1,34 @@
+package jgibblda;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.spi.OptionHandler;
+import org.kohsuke.args4j.spi.Parameters;
+import org.kohsuke.args4j.spi.Setter;
+
+/**
+ * Option handler for long values, which this version of args4j does not
+ * have, so that a seed recorded in a .others file can be passed back with -seed
+ */
+public class LongOptionHandler extends OptionHandler<Long> {
+
+	public LongOptionHandler(CmdLineParser parser, Option option, Setter<? super Long> setter){
+		super(parser, option, setter);
+	}
+
+	public int parseArguments(Parameters params) throws CmdLineException {
+		String value = params.getParameter(0);
+		try {
+			setter.addValue(Long.parseLong(value));
+		}
+		catch (NumberFormatException e){
+			throw new CmdLineException("\"" + value + "\" is not a valid value for " + params.getOptionName());
+		}
+		return 1;
+	}
+
+	public String getDefaultMetaVariable(){
+		return "N";
+	}
+}
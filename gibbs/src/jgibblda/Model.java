@@ -36,10 +36,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Vector;
 
@@ -50,6 +47,7 @@ public class Model {
 	//---------------------------------------------------------------
 	
 	public static String tassignSuffix;	//suffix for topic assignment file
+	public static String tassignBinSuffix;	//suffix for binary topic assignment file, see TAssignFile
 	public static String thetaSuffix;		//suffix for theta (topic - document distribution) file
 	public static String phiSuffix;		//suffix for phi file (topic - word distribution) file
 	public static String othersSuffix; 	//suffix for containing other parameters
@@ -76,12 +74,19 @@ public class Model {
 	public int liter; //the iteration at which the model was saved	
 	public int savestep; //saving period
 	public int twords; //print out top words per each topic
+	public int nthreads; //number of threads for the parallel parts
+	public long seed; //seed of the random streams
+	public RandomStreams rand; //one random stream per sampling thread
 	public int withrawdata;
+	public String tassignFormat; //format of the saved topic assignments: binary, text or both
 	
-	// Estimated/Inferenced parameters
+	// Estimated/Inferenced parameters, computed from the counts on demand (see theta(m, k) and phi(k, w))
+	// and only materialized by getTheta() and getPhi(), null until then
 	public double [][] theta; //theta: document - topic distributions, size M x K
 	public double [][] phi; // phi: topic-word distributions, size K x V
 	
+	public Model trnModel; //trained model of an inference model, whose counts phi adds to, null for estimation
+	
 	// Temp variables while sampling
 	public Vector<Integer> [] z; //topic assignments for words, size M x doc.size()
 	protected int [][] nw; //nw[i][j]: number of instances of word/term i assigned to topic j, size V x K
@@ -107,6 +112,7 @@ public class Model {
 		wordMapFile = "wordmap.txt";
 		trainlogFile = "trainlog.txt";
 		tassignSuffix = ".tassign";
+		tassignBinSuffix = ".tassign.bin";
 		thetaSuffix = ".theta";
 		phiSuffix = ".phi";
 		othersSuffix = ".others";
@@ -124,6 +130,8 @@ public class Model {
 		beta = 0.1;
 		niters = 2000;
 		liter = 0;
+		nthreads = 1;
+		tassignFormat = "binary";
 		
 		z = null;
 		nw = null;
@@ -134,6 +142,147 @@ public class Model {
 		phi = null;
 	}
 	
+	/**
+	 * Copy of the sampling state (z and the count arrays) of this model, sharing the
+	 * dataset and the parameters, so that it can be saved while sampling goes on
+	 */
+	public Model snapshot(){
+		Model copy = copyParameters();
+		
+		copy.z = newAssignments(M);
+		for (int m = 0; m < M; m++){
+			copy.z[m] = new Vector<Integer>(z[m]);
+		}
+		copy.nw = copyCounts(nw);
+		copy.nd = copyCounts(nd);
+		copy.nwsum = nwsum.clone();
+		copy.ndsum = ndsum.clone();
+		
+		return copy;
+	}
+	
+	/**
+	 * New chain on the same dataset and parameters, with its own counts and random streams
+	 * @param seed seed of the random streams of the chain
+	 * @param restart true for a new random initialization of z, false to start from the current z
+	 */
+	public Model newChain(long seed, boolean restart){
+		Model chain = restart ? copyParameters() : snapshot();
+		chain.seed = seed;
+		chain.rand = new RandomStreams(seed, nthreads);
+		chain.p = new double[K];
+		if (restart)
+			chain.initAssignments();
+		return chain;
+	}
+	
+	/**
+	 * Model sharing the dataset and the parameters of this one, without sampling state
+	 */
+	private Model copyParameters(){
+		Model copy = new Model();
+		
+		copy.wordMapFile = wordMapFile;
+		copy.trainlogFile = trainlogFile;
+		copy.dir = dir;
+		copy.dfile = dfile;
+		copy.modelName = modelName;
+		copy.modelStatus = modelStatus;
+		copy.data = data;
+		
+		copy.M = M;
+		copy.V = V;
+		copy.K = K;
+		copy.alpha = alpha;
+		copy.beta = beta;
+		copy.niters = niters;
+		copy.liter = liter;
+		copy.savestep = savestep;
+		copy.twords = twords;
+		copy.nthreads = nthreads;
+		copy.withrawdata = withrawdata;
+		copy.tassignFormat = tassignFormat;
+		copy.seed = seed;
+		return copy;
+	}
+	
+	private static int [][] copyCounts(int [][] counts){
+		int [][] copy = new int[counts.length][];
+		for (int i = 0; i < counts.length; i++){
+			copy[i] = counts[i].clone();
+		}
+		return copy;
+	}
+	
+	//---------------------------------------------------------------
+	//	Estimated parameters
+	//---------------------------------------------------------------
+	
+	/**
+	 * probability of topic k in document m, from the current counts
+	 */
+	public double theta(int m, int k){
+		return (nd[m][k] + alpha) / (ndsum[m] + K * alpha);
+	}
+	
+	/**
+	 * probability of word w in topic k, from the current counts, the counts of
+	 * the trained model are added for an inference model (w is then a local id)
+	 */
+	public double phi(int k, int w){
+		if (trnModel == null)
+			return (nw[w][k] + beta) / (nwsum[k] + V * beta);
+		
+		int id = data.localToGlobal[w];
+		return (trnModel.nw[id][k] + nw[w][k] + beta) / (trnModel.nwsum[k] + nwsum[k] + trnModel.V * beta);
+	}
+	
+	/**
+	 * topic distribution of document m, size K
+	 */
+	public double [] getThetaRow(int m){
+		double [] row = new double[K];
+		for (int k = 0; k < K; k++){
+			row[k] = theta(m, k);
+		}
+		return row;
+	}
+	
+	/**
+	 * word distribution of topic k, size V
+	 */
+	public double [] getPhiRow(int k){
+		double [] row = new double[V];
+		for (int w = 0; w < V; w++){
+			row[w] = phi(k, w);
+		}
+		return row;
+	}
+	
+	/**
+	 * materialize theta from the current counts, the array is kept and refreshed by later calls
+	 */
+	public double [][] getTheta(){
+		if (theta == null)
+			theta = new double[M][];
+		for (int m = 0; m < M; m++){
+			theta[m] = getThetaRow(m);
+		}
+		return theta;
+	}
+	
+	/**
+	 * materialize phi from the current counts, the array is kept and refreshed by later calls
+	 */
+	public double [][] getPhi(){
+		if (phi == null)
+			phi = new double[K][];
+		for (int k = 0; k < K; k++){
+			phi[k] = getPhiRow(k);
+		}
+		return phi;
+	}
+	
 	//---------------------------------------------------------------
 	//	I/O Methods
 	//---------------------------------------------------------------
@@ -243,6 +392,18 @@ public class Model {
 		return true;
 	}
 	
+	protected boolean readTAssignBinFile(String tassignBinFile){
+		try {
+			TAssignFile.read(tassignBinFile, this);
+		}
+		catch (Exception e){
+			System.out.println("Error while loading model: " + e.getMessage());
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+	
 	/**
 	 * load saved model
 	 */
@@ -250,7 +411,13 @@ public class Model {
 		if (!readOthersFile(dir + File.separator + modelName + othersSuffix))
 			return false;
 		
-		if (!readTAssignFile(dir + File.separator + modelName + tassignSuffix))
+		// the binary file is mapped when the model has one, the text file is parsed otherwise
+		String tassignBinFile = dir + File.separator + modelName + tassignBinSuffix;
+		if (new File(tassignBinFile).isFile()){
+			if (!readTAssignBinFile(tassignBinFile))
+				return false;
+		}
+		else if (!readTAssignFile(dir + File.separator + modelName + tassignSuffix))
 			return false;
 		
 		// read dictionary
@@ -290,6 +457,21 @@ public class Model {
 		return true;
 	}
 	
+	/**
+	 * Save word-topic assignments for this model in the binary format
+	 */
+	public boolean saveModelTAssignBin(String filename){
+		try {
+			TAssignFile.write(filename, data, z, K);
+		}
+		catch (Exception e){
+			System.out.println("Error while saving model binary tassign: " + e.getMessage());
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+	
 	/**
 	 * Save theta (topic distribution) for this model
 	 */
@@ -298,7 +480,7 @@ public class Model {
 			BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
 			for (int i = 0; i < M; i++){
 				for (int j = 0; j < K; j++){
-					writer.write(theta[i][j] + " ");
+					writer.write(theta(i, j) + " ");
 				}
 				writer.write("\n");
 			}
@@ -322,7 +504,7 @@ public class Model {
 			
 			for (int i = 0; i < K; i++){
 				for (int j = 0; j < V; j++){
-					writer.write(phi[i][j] + " ");
+					writer.write(phi(i, j) + " ");
 				}
 				writer.write("\n");
 			}
@@ -349,6 +531,7 @@ public class Model {
 			writer.write("ndocs=" + M + "\n");
 			writer.write("nwords=" + V + "\n");
 			writer.write("liters=" + liter + "\n");
+			writer.write("seed=" + seed + "\n");
 			
 			writer.close();
 		}
@@ -372,23 +555,20 @@ public class Model {
 				twords = V;
 			}
 			
+			double [][] dist = new double[K][];
+			for (int k = 0; k < K; k++){
+				dist[k] = getPhiRow(k);
+			}
+			TopWords top = TopWords.extract(dist, twords, nthreads);
 			for (int k = 0; k < K; k++){
-				List<Pair> wordsProbsList = new ArrayList<Pair>(); 
-				for (int w = 0; w < V; w++){
-					Pair p = new Pair(w, phi[k][w], false);
-					
-					wordsProbsList.add(p);
-				}//end foreach word
-				
 				//print topic				
 				writer.write("Topic " + k + "th:\n");
-				Collections.sort(wordsProbsList);
 				
-				for (int i = 0; i < twords; i++){
-					if (data.localDict.contains((Integer)wordsProbsList.get(i).first)){
-						String word = data.localDict.getWord((Integer)wordsProbsList.get(i).first);
+				for (int i = 0; i < top.ids[k].length; i++){
+					if (data.localDict.contains(top.ids[k][i])){
+						String word = data.localDict.getWord(top.ids[k][i]);
 						
-						writer.write("\t" + word + " " + wordsProbsList.get(i).second + "\n");
+						writer.write("\t" + word + " " + top.probs[k][i] + "\n");
 					}
 				}
 			} //end foreach topic			
@@ -407,8 +587,18 @@ public class Model {
 	 * Save model
 	 */
 	public boolean saveModel(String modelName){
-		if (!saveModelTAssign(dir + File.separator + modelName + tassignSuffix)){
-			return false;
+		if (!tassignFormat.equals("text")){
+			if (!saveModelTAssignBin(dir + File.separator + modelName + tassignBinSuffix))
+				return false;
+		}
+		else {
+			// an older binary file would be loaded instead of the new text one
+			new File(dir + File.separator + modelName + tassignBinSuffix).delete();
+		}
+		
+		if (!tassignFormat.equals("binary")){
+			if (!saveModelTAssign(dir + File.separator + modelName + tassignSuffix))
+				return false;
 		}
 		
 		if (!saveModelOthers(dir + File.separator + modelName + othersSuffix)){			
@@ -458,8 +648,19 @@ public class Model {
 		
 		dfile = option.dfile;
 		twords = option.twords;
+		nthreads = Math.max(1, option.nthreads);
 		wordMapFile = option.wordMapFileName;
 		
+		tassignFormat = option.tassignFormat;
+		if (!tassignFormat.equals("binary") && !tassignFormat.equals("text") && !tassignFormat.equals("both")){
+			System.out.println("Unknown tassign format " + tassignFormat + ", expected binary, text or both");
+			return false;
+		}
+		
+		seed = RandomStreams.resolveSeed(option.seed);
+		// stream i does not depend on the number of streams, the sharded inference may need more
+		rand = new RandomStreams(seed, Math.max(nthreads, option.infthreads));
+		
 		return true;
 	}
 	
@@ -470,10 +671,9 @@ public class Model {
 		if (!init(option))
 			return false;
 		
-		int m, n, w, k;		
 		p = new double[K];		
 		
-		data = LDADataset.readDataSet(dir + File.separator + dfile);
+		data = LDADataset.readDataSet(dir + File.separator + dfile, nthreads);
 		if (data == null){
 			System.out.println("Fail to read training data!\n");
 			return false;
@@ -489,38 +689,36 @@ public class Model {
 	    // alpha, beta: from command line or default values
 	    // niters, savestep: from command line or default values
 
+		initAssignments();
+		return true;
+	}
+	
+	/**
+	 * empty array of the topic assignments of M documents
+	 */
+	@SuppressWarnings("unchecked")
+	static Vector<Integer> [] newAssignments(int M){
+		// arrays of a generic type can only be created raw
+		return (Vector<Integer> []) new Vector<?>[M];
+	}
+	
+	/**
+	 * allocate the count variables and draw the initial topic of every word at random
+	 */
+	protected void initAssignments(){
 		nw = new int[V][K];
-		for (w = 0; w < V; w++){
-			for (k = 0; k < K; k++){
-				nw[w][k] = 0;
-			}
-		}
-		
 		nd = new int[M][K];
-		for (m = 0; m < M; m++){
-			for (k = 0; k < K; k++){
-				nd[m][k] = 0;
-			}
-		}
-		
 		nwsum = new int[K];
-		for (k = 0; k < K; k++){
-			nwsum[k] = 0;
-		}
-		
 		ndsum = new int[M];
-		for (m = 0; m < M; m++){
-			ndsum[m] = 0;
-		}
 		
-		z = new Vector[M];
-		for (m = 0; m < data.M; m++){
+		z = newAssignments(M);
+		for (int m = 0; m < data.M; m++){
 			int N = data.docs[m].length;
 			z[m] = new Vector<Integer>();
 			
 			//initilize for z
-			for (n = 0; n < N; n++){
-				int topic = (int)Math.floor(Math.random() * K);
+			for (int n = 0; n < N; n++){
+				int topic = rand.get(0).nextInt(K);
 				z[m].add(topic);
 				
 				// number of instances of word assigned to topic j
@@ -533,11 +731,6 @@ public class Model {
 			// total number of words in document i
 			ndsum[m] = N;
 		}
-		
-		theta = new double[M][K];		
-		phi = new double[K][V];
-		
-		return true;
 	}
 	
 	/**
@@ -548,11 +741,12 @@ public class Model {
 		if (!init(option))
 			return false;
 		
-		int m, n, w, k;
+		int m, n;
 		
 		K = trnModel.K;
 		alpha = trnModel.alpha;
 		beta = trnModel.beta;		
+		this.trnModel = trnModel;
 		
 		p = new double[K];
 		System.out.println("K:" + K);
@@ -567,33 +761,11 @@ public class Model {
 		System.out.println("M:" + M);
 		System.out.println("V:" + V);
 		
-		// K: from command line or default value
-	    // alpha, beta: from command line or default values
-	    // niters, savestep: from command line or default values
-
+		// V is the size of the local vocabulary, the words of the new documents only
 		nw = new int[V][K];
-		for (w = 0; w < V; w++){
-			for (k = 0; k < K; k++){
-				nw[w][k] = 0;
-			}
-		}
-		
 		nd = new int[M][K];
-		for (m = 0; m < M; m++){
-			for (k = 0; k < K; k++){
-				nd[m][k] = 0;
-			}
-		}
-		
 		nwsum = new int[K];
-		for (k = 0; k < K; k++){
-			nwsum[k] = 0;
-		}
-		
 		ndsum = new int[M];
-		for (m = 0; m < M; m++){
-			ndsum[m] = 0;
-		}
 		
 		z = new Vector[M];
 		for (m = 0; m < data.M; m++){
@@ -602,7 +774,7 @@ public class Model {
 			
 			//initilize for z
 			for (n = 0; n < N; n++){
-				int topic = (int)Math.floor(Math.random() * K);
+				int topic = rand.get(0).nextInt(K);
 				z[m].add(topic);
 				
 				// number of instances of word assigned to topic j
@@ -616,9 +788,6 @@ public class Model {
 			ndsum[m] = N;
 		}
 		
-		theta = new double[M][K];		
-		phi = new double[K][V];
-		
 		return true;
 	}
 	
@@ -630,7 +799,7 @@ public class Model {
 		if (!init(option))
 			return false;
 		
-		LDADataset dataset = LDADataset.readDataSet(dir + File.separator + dfile, trnModel.data.localDict);
+		LDADataset dataset = LDADataset.readDataSet(dir + File.separator + dfile, trnModel.data.localDict, nthreads);
 		if (dataset == null){
 			System.out.println("Fail to read dataset!\n");
 			return false;
@@ -705,8 +874,6 @@ public class Model {
 	    	ndsum[m] = N;
 	    }
 	    
-	    theta = new double[M][K];
-	    phi = new double[K][V];
 	    dir = option.dir;
 		savestep = option.savestep;
 	    
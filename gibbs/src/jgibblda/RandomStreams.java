@@ -0,0 +1,56 @@
+package jgibblda;
+
+import java.util.SplittableRandom;
+
+/**
+ * Independent random streams for the samplers, one per sampling thread,
+ * all split from a single seed. Stream i is always derived the same way
+ * from the seed, so the same seed and number of threads give the same
+ * draws, and threads never contend on a shared generator.
+ */
+public class RandomStreams {
+
+	//---------------------------------------------------------------
+	// Instance Variables
+	//---------------------------------------------------------------
+
+	private SplittableRandom [] streams;
+
+	//---------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------
+
+	/**
+	 * @param seed seed of the whole run
+	 * @param nstreams number of streams, usually the number of threads
+	 */
+	public RandomStreams(long seed, int nstreams){
+		SplittableRandom root = new SplittableRandom(seed);
+		streams = new SplittableRandom[Math.max(1, nstreams)];
+		for (int i = 0; i < streams.length; i++){
+			streams[i] = root.split();
+		}
+	}
+
+	//---------------------------------------------------------------
+	// Public Methods
+	//---------------------------------------------------------------
+
+	/**
+	 * stream of the i-th thread, a stream must only be used by one thread at a time
+	 */
+	public SplittableRandom get(int i){
+		return streams[i];
+	}
+
+	public int size(){
+		return streams.length;
+	}
+
+	/**
+	 * the seed to use for an option value, negative values mean a seed from the clock
+	 */
+	public static long resolveSeed(long seed){
+		return (seed >= 0) ? seed : System.nanoTime() & Long.MAX_VALUE;
+	}
+}
@@ -0,0 +1,73 @@
+package jgibblda;
+
+/**
+ * Kernel of the Gibbs sampling loop over the K topics: the unnormalized
+ * p(z_i = k | z_-i, w) of a word from the count rows. This class is the
+ * scalar implementation. The SIMD one (VectorSamplingKernels,
+ * jdk.incubator.vector) lives in gibbs/src-simd, compiled apart so that
+ * gibbs/src builds with a plain javac. get() returns it when it is on the
+ * classpath and the JVM runs with
+ *   --add-modules=jdk.incubator.vector
+ * and this one otherwise, or when -Dkernels.scalar=true.
+ * Both evaluate the same expression in the same order per topic, so the
+ * weights, and the sampled topics, are the same whichever is used.
+ */
+public class SamplingKernels {
+
+	private static final SamplingKernels SCALAR = new SamplingKernels();
+	private static final SamplingKernels BEST = load();
+
+	/**
+	 * the fastest implementation available in this JVM
+	 */
+	public static SamplingKernels get(){
+		return BEST;
+	}
+
+	/**
+	 * the scalar implementation, e.g. to compare with get()
+	 */
+	public static SamplingKernels scalar(){
+		return SCALAR;
+	}
+
+	private static SamplingKernels load(){
+		if (Boolean.getBoolean("kernels.scalar"))
+			return SCALAR;
+		try {
+			SamplingKernels kernels = (SamplingKernels) Class.forName("jgibblda.VectorSamplingKernels").getDeclaredConstructor().newInstance();
+			// the Vector API classes are only linked on first use
+			kernels.topicWeights(new int[1], new int[1], new int[1], 1, 1, 1, 1, new double[1], 1);
+			return kernels;
+		}
+		catch (LinkageError e){
+			// jdk.incubator.vector is not in the module graph
+			return SCALAR;
+		}
+		catch (ReflectiveOperationException e){
+			// gibbs/src-simd was not compiled
+			return SCALAR;
+		}
+	}
+
+	protected SamplingKernels(){
+	}
+
+	public String name(){
+		return "scalar";
+	}
+
+	/**
+	 * p[k] = (nw[k] + beta) / (nwsum[k] + Vbeta) * (nd[k] + alpha) / docNorm for k in [0, K)
+	 * @param nw topic counts of the word
+	 * @param nwsum topic counts of the corpus
+	 * @param nd topic counts of the document
+	 * @param docNorm number of words of the document + K * alpha
+	 */
+	public void topicWeights(int [] nw, int [] nwsum, int [] nd, double beta, double Vbeta, double alpha,
+			double docNorm, double [] p, int K){
+		for (int k = 0; k < K; k++){
+			p[k] = (nw[k] + beta)/(nwsum[k] + Vbeta) * (nd[k] + alpha)/docNorm;
+		}
+	}
+}
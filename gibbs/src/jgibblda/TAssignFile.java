@@ -0,0 +1,251 @@
+package jgibblda;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Vector;
+
+/**
+ * Binary word-topic assignment file, the corpus of a model together with
+ * its topic assignments. Tokens are stored with a fixed width so that the
+ * file is memory-mapped on load and every document is copied out in bulk,
+ * instead of parsing the word:topic pairs of the text .tassign file.
+ * The width is the smallest of 1, 2 or 4 bytes that holds every word id
+ * (resp. topic), so the file stays smaller than the text one.
+ *
+ * Layout (little endian):
+ *   header  : magic, version, M, V, K, word bytes, topic bytes
+ *   offsets : M + 1 longs, index of the first token of each document
+ *   words   : one word id per token, documents one after the other
+ *   topics  : one topic per token, in the same order
+ */
+public class TAssignFile {
+
+	private static final int MAGIC = 0x4C444154;	// "LDAT"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 7 * 4;
+
+	// a section is mapped at once, and a single mapping can not go over 2GB
+	private static final long MAX_SECTION_BYTES = Integer.MAX_VALUE;
+
+	//---------------------------------------------------------------
+	// Writing
+	//---------------------------------------------------------------
+
+	/**
+	 * write the documents of data and their topic assignments z
+	 */
+	public static void write(String filename, LDADataset data, Vector<Integer> [] z, int K) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(new File(filename), "rw");
+		try {
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+			int wordBytes = width(data.V);
+			int topicBytes = width(K);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(data.M).putInt(data.V).putInt(K);
+			buffer.putInt(wordBytes).putInt(topicBytes);
+
+			long offset = 0;
+			for (int m = 0; m <= data.M; m++){
+				if (buffer.remaining() < 8)
+					flush(channel, buffer);
+				buffer.putLong(offset);
+				if (m < data.M)
+					offset += data.docs[m].length;
+			}
+
+			for (int m = 0; m < data.M; m++){
+				int [] words = data.docs[m].words;
+				for (int n = 0; n < data.docs[m].length; n++){
+					put(channel, buffer, words[n], wordBytes);
+				}
+			}
+
+			for (int m = 0; m < data.M; m++){
+				for (int n = 0; n < data.docs[m].length; n++){
+					put(channel, buffer, z[m].get(n), topicBytes);
+				}
+			}
+
+			flush(channel, buffer);
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * bytes per entry for values in [0, count)
+	 */
+	private static int width(int count){
+		if (count <= 1 << 8)
+			return 1;
+		return (count <= 1 << 16) ? 2 : 4;
+	}
+	
+	private static void put(FileChannel channel, ByteBuffer buffer, int value, int bytes) throws IOException {
+		if (buffer.remaining() < bytes)
+			flush(channel, buffer);
+		if (bytes == 1)
+			buffer.put((byte) value);
+		else if (bytes == 2)
+			buffer.putShort((short) value);
+		else
+			buffer.putInt(value);
+	}
+	
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	//---------------------------------------------------------------
+	// Reading
+	//---------------------------------------------------------------
+
+	/**
+	 * map a file written by write() and set the dataset and z of the model,
+	 * M and V of the model are checked against the file when already set (by the .others file)
+	 */
+	public static void read(String filename, Model model) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(new File(filename), "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() < HEADER_BYTES)
+				throw new IOException(filename + " is not a binary tassign file");
+
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION)
+				throw new IOException(filename + " is not a binary tassign file");
+
+			int M = header.getInt();
+			int V = header.getInt();
+			header.getInt();	// K, the model takes it from the .others file
+			int wordBytes = header.getInt();
+			int topicBytes = header.getInt();
+			if (M < 0 || V < 0 || !validWidth(wordBytes) || !validWidth(topicBytes))
+				throw new IOException(filename + " has a corrupt header: " + M + " documents, " + V + " words, "
+						+ wordBytes + " and " + topicBytes + " bytes per word and topic");
+			if ((model.M > 0 && model.M != M) || (model.V > 0 && model.V != V))
+				throw new IOException(filename + " has " + M + " documents and " + V + " words, the model has "
+						+ model.M + " and " + model.V);
+
+			long position = HEADER_BYTES;
+			if (position + 8L * (M + 1) > channel.size())
+				throw new IOException(filename + " is too short for the offsets of " + M + " documents");
+			LongBuffer offsets = map(channel, position, 8L * (M + 1)).asLongBuffer();
+			position += 8L * (M + 1);
+
+			// offsets start at 0, never decrease, and documents fit in an int array
+			if (offsets.get(0) != 0)
+				throw new IOException(filename + " has a corrupt offset table");
+			for (int m = 0; m < M; m++){
+				long length = offsets.get(m + 1) - offsets.get(m);
+				if (length < 0 || length > Integer.MAX_VALUE)
+					throw new IOException(filename + " has a corrupt offset table at document " + m);
+			}
+
+			long N = offsets.get(M);
+			if (position + (long) (wordBytes + topicBytes) * N != channel.size())
+				throw new IOException(filename + " has " + channel.size() + " bytes, "
+						+ (position + (long) (wordBytes + topicBytes) * N) + " expected from its header");
+			Section words = new Section(map(channel, position, wordBytes * N), wordBytes);
+			position += wordBytes * N;
+			Section topics = new Section(map(channel, position, topicBytes * N), topicBytes);
+
+			LDADataset data = new LDADataset(M);
+			data.V = V;
+			Vector<Integer> [] z = Model.newAssignments(M);
+			int [] docTopics = new int[0];
+
+			for (int m = 0; m < M; m++){
+				int length = (int) (offsets.get(m + 1) - offsets.get(m));
+
+				Document doc = new Document(length);
+				words.get(doc.words, length);
+				data.setDoc(doc, m);
+
+				if (docTopics.length < length)
+					docTopics = new int[Math.max(length, 2 * docTopics.length)];
+				topics.get(docTopics, length);
+
+				z[m] = new Vector<Integer>(length);
+				for (int n = 0; n < length; n++){
+					z[m].add(docTopics[n]);
+				}
+			}
+
+			model.M = M;
+			model.V = V;
+			model.data = data;
+			model.z = z;
+		}
+		finally {
+			// the mappings are only used in here
+			file.close();
+		}
+	}
+
+	private static boolean validWidth(int bytes){
+		return bytes == 1 || bytes == 2 || bytes == 4;
+	}
+
+	/**
+	 * sequential bulk reader of the entries of one section
+	 */
+	private static class Section {
+		private final ByteBuffer bytes;
+		private final ShortBuffer shorts;
+		private final IntBuffer ints;
+		private byte [] byteScratch = new byte[0];
+		private short [] shortScratch = new short[0];
+
+		Section(ByteBuffer buffer, int width){
+			bytes = (width == 1) ? buffer : null;
+			shorts = (width == 2) ? buffer.asShortBuffer() : null;
+			ints = (width == 4) ? buffer.asIntBuffer() : null;
+		}
+
+		/**
+		 * copy the next length entries into dst
+		 */
+		void get(int [] dst, int length){
+			if (ints != null){
+				ints.get(dst, 0, length);
+			}
+			else if (shorts != null){
+				if (shortScratch.length < length)
+					shortScratch = new short[Math.max(length, 2 * shortScratch.length)];
+				shorts.get(shortScratch, 0, length);
+				for (int i = 0; i < length; i++){
+					dst[i] = shortScratch[i] & 0xFFFF;
+				}
+			}
+			else {
+				if (byteScratch.length < length)
+					byteScratch = new byte[Math.max(length, 2 * byteScratch.length)];
+				bytes.get(byteScratch, 0, length);
+				for (int i = 0; i < length; i++){
+					dst[i] = byteScratch[i] & 0xFF;
+				}
+			}
+		}
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+		if (size > MAX_SECTION_BYTES)
+			throw new IOException("Binary tassign section of " + size + " bytes is over the 2GB mapping limit");
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
@@ -0,0 +1,153 @@
+package jgibblda;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Top words of every topic, extracted with a bounded min-heap per topic
+ * so that each topic costs O(V log k) instead of sorting all V words.
+ * Topics are independent and are split over several threads.
+ */
+public class TopWords {
+
+	//---------------------------------------------------------------
+	// Instance Variables
+	//---------------------------------------------------------------
+
+	public int [][] ids;		// ids[k][i]: word id of the i-th most likely word of topic k
+	public double [][] probs;	// probs[k][i]: its probability, in decreasing order
+
+	//---------------------------------------------------------------
+	// Extraction
+	//---------------------------------------------------------------
+
+	/**
+	 * extract the top words of every row of a topic-word distribution
+	 * @param dist distribution, size K x V
+	 * @param twords number of words to keep per topic
+	 * @param nthreads number of threads the topics are split over
+	 */
+	public static TopWords extract(final double [][] dist, final int twords, int nthreads){
+		final TopWords top = new TopWords();
+		final int K = dist.length;
+		top.ids = new int[K][];
+		top.probs = new double[K][];
+
+		nthreads = Math.max(1, Math.min(nthreads, K));
+		if (nthreads == 1){
+			for (int k = 0; k < K; k++){
+				top.extractRow(k, dist[k], twords);
+			}
+			return top;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+		try {
+			List<Future<?>> results = new ArrayList<Future<?>>();
+			for (int t = 0; t < nthreads; t++){
+				final int start = K * t / nthreads;
+				final int end = K * (t + 1) / nthreads;
+				results.add(pool.submit(new Runnable(){
+					public void run(){
+						for (int k = start; k < end; k++){
+							top.extractRow(k, dist[k], twords);
+						}
+					}
+				}));
+			}
+			for (Future<?> result : results){
+				result.get();
+			}
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while extracting top words", e);
+		}
+		catch (ExecutionException e){
+			throw new IllegalStateException("Top words extraction failed", e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		return top;
+	}
+
+	/**
+	 * keep the twords largest entries of a row, ties go to the smaller word id
+	 */
+	private void extractRow(int k, double [] row, int twords){
+		int size = 0;
+		int cap = Math.min(twords, row.length);
+		int [] heapIds = new int[cap];
+		double [] heapVals = new double[cap];
+
+		for (int w = 0; w < row.length; w++){
+			if (size < cap){
+				heapIds[size] = w;
+				heapVals[size] = row[w];
+				siftUp(heapIds, heapVals, size);
+				size++;
+			}
+			else if (cap > 0 && row[w] > heapVals[0]){
+				heapIds[0] = w;
+				heapVals[0] = row[w];
+				siftDown(heapIds, heapVals, 0, size);
+			}
+		}
+
+		// pop the min-heap into the result from the back to get decreasing order
+		ids[k] = new int[size];
+		probs[k] = new double[size];
+		for (int i = size - 1; i >= 0; i--){
+			ids[k][i] = heapIds[0];
+			probs[k][i] = heapVals[0];
+			heapIds[0] = heapIds[i];
+			heapVals[0] = heapVals[i];
+			siftDown(heapIds, heapVals, 0, i);
+		}
+	}
+
+	//---------------------------------------------------------------
+	// Min-heap helpers
+	//---------------------------------------------------------------
+
+	private static boolean less(int [] ids, double [] vals, int a, int b){
+		if (vals[a] != vals[b])
+			return vals[a] < vals[b];
+		return ids[a] > ids[b];
+	}
+
+	private static void swap(int [] ids, double [] vals, int a, int b){
+		int id = ids[a]; ids[a] = ids[b]; ids[b] = id;
+		double val = vals[a]; vals[a] = vals[b]; vals[b] = val;
+	}
+
+	private static void siftUp(int [] ids, double [] vals, int pos){
+		while (pos > 0){
+			int parent = (pos - 1) / 2;
+			if (!less(ids, vals, pos, parent))
+				break;
+			swap(ids, vals, pos, parent);
+			pos = parent;
+		}
+	}
+
+	private static void siftDown(int [] ids, double [] vals, int pos, int size){
+		while (true){
+			int smallest = pos;
+			int left = 2 * pos + 1, right = left + 1;
+			if (left < size && less(ids, vals, left, smallest))
+				smallest = left;
+			if (right < size && less(ids, vals, right, smallest))
+				smallest = right;
+			if (smallest == pos)
+				return;
+			swap(ids, vals, pos, smallest);
+			pos = smallest;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package jgibblda;
+
+import java.util.Arrays;
+
+/**
+ * Blocked word-major layout of the tokens of a dataset, for Gibbs sweeps that
+ * visit the tokens word by word instead of document by document. The documents
+ * are cut into blocks of consecutive documents, and the tokens of a block are
+ * ordered by word id, then by document. The nw row of a word then stays in
+ * cache for all of its tokens in the block, while the nd rows of the block are
+ * small enough to stay in cache as well. A single block over all the documents
+ * is the plain word-major order.
+ * The layout only depends on the dataset and is shared by every chain, the
+ * topics of a chain are kept in a flat array in the same order and copied
+ * back to z when the model is saved.
+ */
+public class WordOrder {
+
+	//---------------------------------------------------------------
+	// Instance Variables
+	//---------------------------------------------------------------
+
+	public final int [] words;		// word of each token
+	public final int [] docs;		// document of each token
+	public final int [] positions;	// position of each token in its document
+
+	//---------------------------------------------------------------
+	// Constructors
+	//---------------------------------------------------------------
+
+	/**
+	 * @param data dataset
+	 * @param blockDocs number of documents per block
+	 */
+	public WordOrder(LDADataset data, int blockDocs){
+		int N = 0;
+		for (int m = 0; m < data.M; m++){
+			N += data.docs[m].length;
+		}
+		words = new int[N];
+		docs = new int[N];
+		positions = new int[N];
+
+		// counting sort of each block by word id, stable in the documents
+		blockDocs = Math.max(1, blockDocs);
+		int [] next = new int[data.V];
+		int [] present = new int[16];
+		int i = 0;
+		for (int first = 0; first < data.M; first += blockDocs){
+			int last = (int) Math.min(data.M, (long) first + blockDocs);
+
+			int npresent = 0;
+			for (int m = first; m < last; m++){
+				int [] doc = data.docs[m].words;
+				for (int n = 0; n < data.docs[m].length; n++){
+					if (next[doc[n]]++ == 0){
+						if (npresent == present.length)
+							present = Arrays.copyOf(present, 2 * npresent);
+						present[npresent++] = doc[n];
+					}
+				}
+			}
+
+			// counts to start offsets, in word order
+			Arrays.sort(present, 0, npresent);
+			int start = i;
+			for (int j = 0; j < npresent; j++){
+				int count = next[present[j]];
+				next[present[j]] = start;
+				start += count;
+			}
+
+			for (int m = first; m < last; m++){
+				int [] doc = data.docs[m].words;
+				for (int n = 0; n < data.docs[m].length; n++){
+					int t = next[doc[n]]++;
+					words[t] = doc[n];
+					docs[t] = m;
+					positions[t] = n;
+				}
+			}
+
+			for (int j = 0; j < npresent; j++){
+				next[present[j]] = 0;
+			}
+			i = start;
+		}
+	}
+
+	//---------------------------------------------------------------
+	// Public Methods
+	//---------------------------------------------------------------
+
+	/**
+	 * topics of the tokens of a model, in the order of the layout
+	 */
+	public int [] gather(Model model){
+		int [] topics = new int[docs.length];
+		for (int i = 0; i < docs.length; i++){
+			topics[i] = model.z[docs[i]].get(positions[i]);
+		}
+		return topics;
+	}
+
+	/**
+	 * copy topics in the order of the layout back to the z of a model
+	 */
+	public void scatter(int [] topics, Model model){
+		for (int i = 0; i < docs.length; i++){
+			model.z[docs[i]].set(positions[i], topics[i]);
+		}
+	}
+}
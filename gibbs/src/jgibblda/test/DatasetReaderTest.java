@@ -0,0 +1,100 @@
+package jgibblda.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+
+import jgibblda.DatasetReader;
+import jgibblda.Dictionary;
+import jgibblda.LDADataset;
+
+/**
+ * The parallel reader must load the same dataset as the line by line reader
+ * whatever the number of threads, including files with more lines than their
+ * header announces, whose extra lines must not add words to the dictionary.
+ */
+public class DatasetReaderTest {
+	
+	public static void main(String args[]) throws IOException {
+		File dir = Files.createTempDirectory("dataset-test").toFile();
+		
+		// 3 documents announced, a 4th line with words of its own
+		File small = new File(dir, "small.dat");
+		PrintWriter writer = new PrintWriter(small, "UTF-8");
+		writer.print("3\na b  c\r\nd a\ne f\ng h\n");
+		writer.close();
+		
+		// random corpus, 200 documents announced and 260 lines, the extra ones with words of their own
+		File large = new File(dir, "large.dat");
+		Random rand = new Random(10701);
+		writer = new PrintWriter(large, "UTF-8");
+		writer.println(200);
+		for (int m = 0; m < 260; m++){
+			int length = 1 + rand.nextInt(30);
+			for (int n = 0; n < length; n++){
+				writer.print((n > 0 ? " " : "") + (m < 200 ? "w" : "x") + rand.nextInt(300));
+			}
+			writer.println();
+		}
+		writer.close();
+		
+		// global dictionary for the inference case, half of the words of the large file
+		Dictionary dict = new Dictionary();
+		for (int w = 0; w < 300; w += 2){
+			dict.addWord("w" + w);
+			dict.addWord("x" + w);
+		}
+		
+		// the line by line reader keeps the empty word between two blanks, so the small file
+		// is checked against its 6 words and the single thread parse
+		LDADataset single = DatasetReader.read(small.getPath(), null, 1);
+		int mismatches = (single != null && single.V == 6) ? 0 : 1;
+		for (int nthreads = 1; nthreads <= 8; nthreads++){
+			mismatches += compare(single, DatasetReader.read(small.getPath(), null, nthreads), "small", nthreads);
+			mismatches += compare(LDADataset.readDataSet(large.getPath()), DatasetReader.read(large.getPath(), null, nthreads), "large", nthreads);
+			mismatches += compare(LDADataset.readDataSet(large.getPath(), dict), DatasetReader.read(large.getPath(), dict, nthreads), "large with dictionary", nthreads);
+		}
+		
+		for (File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+		
+		System.out.println(mismatches == 0 ? "Dataset reader OK" : "Dataset reader FAILED : " + mismatches + " mismatches");
+	}
+	
+	/**
+	 * number of differences between the expected and the parsed dataset: sizes, words of the
+	 * dictionary, words of the documents and their global ids
+	 */
+	private static int compare(LDADataset expected, LDADataset parsed, String name, int nthreads){
+		int mismatches = 0;
+		if (parsed == null || expected.M != parsed.M || expected.V != parsed.V){
+			System.out.println(name + ", " + nthreads + " threads : V = " + (parsed == null ? "none" : parsed.V) + ", " + expected.V + " expected");
+			return 1;
+		}
+		
+		for (int w = 0; w < expected.V; w++){
+			if (!expected.localDict.getWord(w).equals(parsed.localDict.getWord(w)))
+				mismatches++;
+			if (expected.localToGlobal != null && expected.localToGlobal[w] != parsed.localToGlobal[w])
+				mismatches++;
+		}
+		for (int m = 0; m < expected.M; m++){
+			int [] words = expected.docs[m].words;
+			if (words.length != parsed.docs[m].length){
+				mismatches++;
+				continue;
+			}
+			for (int n = 0; n < words.length; n++){
+				if (words[n] != parsed.docs[m].words[n])
+					mismatches++;
+			}
+		}
+		
+		if (mismatches > 0)
+			System.out.println(name + ", " + nthreads + " threads : " + mismatches + " mismatches");
+		return mismatches;
+	}
+}
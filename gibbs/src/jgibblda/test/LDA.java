@@ -64,11 +64,11 @@ public class LDA {
 				
 				Model newModel = inferencer.inference();
 			
-				for (int i = 0; i < newModel.phi.length; ++i){
+				for (int i = 0; i < newModel.K; ++i){
 					//phi: K * V
 					System.out.println("-----------------------\ntopic" + i  + " : ");
 					for (int j = 0; j < 10; ++j){
-						System.out.println(inferencer.globalDict.id2word.get(j) + "\t" + newModel.phi[i][j]);
+						System.out.println(inferencer.globalDict.id2word.get(j) + "\t" + newModel.phi(i, j));
 					}
 				}
 			}
@@ -0,0 +1,51 @@
+package jgibblda.test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import jgibblda.SamplingKernels;
+
+/**
+ * Check that the SIMD sampling kernels give exactly the weights of the scalar
+ * ones, on every number of topics up to a few vectors so that all the tail
+ * lengths are covered. Run with gibbs/src-simd on the classpath and
+ * --add-modules=jdk.incubator.vector.
+ */
+public class SamplingKernelsTest {
+	
+	public static void main(String args[]){
+		SamplingKernels scalar = SamplingKernels.scalar();
+		SamplingKernels simd = SamplingKernels.get();
+		if (simd == scalar){
+			System.out.println("SIMD kernels not loaded, nothing to compare");
+			return;
+		}
+		System.out.println("Comparing " + simd.name() + " with " + scalar.name());
+		
+		Random rand = new Random(10701);
+		int failures = 0;
+		for (int K = 1; K <= 203; K++){
+			int [] nw = new int[K];
+			int [] nwsum = new int[K];
+			int [] nd = new int[K];
+			for (int k = 0; k < K; k++){
+				nw[k] = rand.nextInt(50);
+				nwsum[k] = nw[k] + rand.nextInt(100000);
+				nd[k] = rand.nextInt(30);
+			}
+			double beta = 0.1, Vbeta = 10000 * beta, alpha = 50.0 / K, docNorm = 100 + K * alpha;
+			
+			// Same operations in the same order per topic, the weights must be identical
+			double [] expected = new double[K];
+			double [] actual = new double[K];
+			scalar.topicWeights(nw, nwsum, nd, beta, Vbeta, alpha, docNorm, expected, K);
+			simd.topicWeights(nw, nwsum, nd, beta, Vbeta, alpha, docNorm, actual, K);
+			if (!Arrays.equals(expected, actual)){
+				System.out.println("topicWeights differs at K = " + K);
+				failures++;
+			}
+		}
+		
+		System.out.println(failures == 0 ? "Sampling kernels OK" : "Sampling kernels FAILED : " + failures + " mismatches");
+	}
+}
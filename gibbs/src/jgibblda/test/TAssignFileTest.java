@@ -0,0 +1,132 @@
+package jgibblda.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import jgibblda.Estimator;
+import jgibblda.LDACmdOption;
+import jgibblda.Model;
+import jgibblda.TAssignFile;
+
+/**
+ * Round trip of the word-topic assignments: a model saved with -tassign both
+ * must load the same documents and topics from the binary and the text
+ * .tassign file, and corrupt binary files must be rejected with an IOException.
+ */
+public class TAssignFileTest {
+	
+	public static void main(String args[]) throws IOException {
+		File dir = Files.createTempDirectory("tassign-test").toFile();
+		
+		// random corpus, 300 documents over 400 words so that word ids need 2 bytes
+		Random rand = new Random(10701);
+		PrintWriter writer = new PrintWriter(new File(dir, "trn.dat"), "UTF-8");
+		writer.println(300);
+		for (int m = 0; m < 300; m++){
+			int length = 1 + rand.nextInt(40);
+			for (int n = 0; n < length; n++){
+				writer.print((n > 0 ? " " : "") + "w" + rand.nextInt(400));
+			}
+			writer.println();
+		}
+		writer.close();
+		
+		LDACmdOption option = new LDACmdOption();
+		option.est = true;
+		option.dir = dir.getPath();
+		option.dfile = "trn.dat";
+		option.K = 10;
+		option.niters = 5;
+		option.savestep = 0;
+		option.twords = 0;
+		option.nthreads = 1;
+		option.seed = 1;
+		option.tassignFormat = "both";
+		Estimator estimator = new Estimator();
+		if (!estimator.init(option))
+			throw new IllegalStateException("Could not initialize the estimator in " + dir);
+		estimator.estimate();
+		
+		LDACmdOption loadOption = new LDACmdOption();
+		loadOption.estc = true;
+		loadOption.dir = dir.getPath();
+		loadOption.modelName = "model-final";
+		loadOption.nthreads = 1;
+		
+		// binary first, then the text file once the binary one is moved away
+		Model binary = new Model();
+		if (!binary.initEstimatedModel(loadOption))
+			throw new IllegalStateException("Could not load the binary model");
+		File bin = new File(dir, "model-final" + Model.tassignBinSuffix);
+		File moved = new File(dir, "model-final.moved");
+		if (!bin.renameTo(moved))
+			throw new IOException("Could not move " + bin);
+		Model text = new Model();
+		if (!text.initEstimatedModel(loadOption))
+			throw new IllegalStateException("Could not load the text model");
+		
+		int mismatches = 0;
+		if (binary.M != text.M || binary.V != text.V)
+			mismatches++;
+		for (int m = 0; m < Math.min(binary.M, text.M); m++){
+			int length = binary.data.docs[m].length;
+			if (length != text.data.docs[m].length || !binary.z[m].equals(text.z[m])){
+				mismatches++;
+				continue;
+			}
+			for (int n = 0; n < length; n++){
+				if (binary.data.docs[m].words[n] != text.data.docs[m].words[n])
+					mismatches++;
+			}
+		}
+		System.out.println("Binary and text loads : " + mismatches + " mismatches (expected 0)");
+		
+		// corrupt copies: word width 3, decreasing offsets, truncated tokens
+		byte [] bytes = Files.readAllBytes(moved.toPath());
+		int rejected = 0;
+		rejected += rejects(dir, bytes, 20, 3) ? 1 : 0;				// word bytes, header int 5
+		rejected += rejects(dir, bytes, 28 + 8 * 2, 0) ? 1 : 0;		// offset of document 2 down to 0
+		rejected += rejects(dir, Arrays.copyOf(bytes, bytes.length - 1), -1, 0) ? 1 : 0;
+		System.out.println("Corrupt files rejected : " + rejected + " of 3");
+		
+		for (File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+		
+		System.out.println(mismatches == 0 && rejected == 3 ? "TAssign round trip OK" : "TAssign round trip FAILED");
+	}
+	
+	/**
+	 * write bytes with the little endian int at position set to value (none if position < 0)
+	 * and check that reading them throws an IOException
+	 */
+	private static boolean rejects(File dir, byte [] bytes, int position, int value) throws IOException {
+		File corrupt = new File(dir, "corrupt" + Model.tassignBinSuffix);
+		RandomAccessFile file = new RandomAccessFile(corrupt, "rw");
+		try {
+			file.setLength(0);
+			file.write(bytes);
+			if (position >= 0){
+				file.seek(position);
+				file.write(new byte[]{(byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24)});
+			}
+		}
+		finally {
+			file.close();
+		}
+		
+		try {
+			TAssignFile.read(corrupt.getPath(), new Model());
+			return false;
+		}
+		catch (IOException e){
+			System.out.println("Rejected : " + e.getMessage());
+			return true;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package main.kernels;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * SIMD kernels on the preferred vector shape of the CPU, with a scalar loop
+ * for the tail. Only loaded through Kernels.get(), compiled apart from src with
+ *   javac --add-modules=jdk.incubator.vector -cp <classes of src> src-simd/main/kernels/*.java
+ */
+
+class VectorKernels extends Kernels {
+	
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	
+	VectorKernels(){
+	}
+	
+	@Override
+	public String name(){
+		return "vector-" + SPECIES.vectorBitSize();
+	}
+	
+	@Override
+	public double dot(double[] a, double[] b, int length){
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for(int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+			acc = DoubleVector.fromArray(SPECIES, a, i).fma(DoubleVector.fromArray(SPECIES, b, i), acc);
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for(; i < length; i++)
+			sum += a[i] * b[i];
+		return sum;
+	}
+	
+	@Override
+	public double multiplyNormalize(double[] a, double[] b, double[] dst, int length){
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for(; i < bound; i += SPECIES.length()){
+			DoubleVector v = DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i));
+			v.intoArray(dst, i);
+			acc = acc.add(v);
+		}
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for(; i < length; i++){
+			dst[i] = a[i] * b[i];
+			sum += dst[i];
+		}
+		
+		double inv = 1.0 / sum;
+		i = 0;
+		for(; i < bound; i += SPECIES.length())
+			DoubleVector.fromArray(SPECIES, dst, i).mul(inv).intoArray(dst, i);
+		for(; i < length; i++)
+			dst[i] *= inv;
+		return sum;
+	}
+}
@@ -11,29 +11,7 @@ import java.util.Random;
 import org.la4j.vector.Vector;
 import org.la4j.vector.dense.BasicVector;
 
-class Rating {
-	int userId;
-	int movieId;
-	double rating;
-	
-	Rating(int userId, int movieId, double rating) {
-		this.userId = userId;
-		this.movieId = movieId;
-		this.rating = rating;
-	}
-	
-	int getUserId() {
-		return userId;
-	}
-	
-	int getMovieId() {
-		return movieId;
-	}
-	
-	double getRating() {
-		return rating;
-	}
-}
+import main.kernels.Kernels;
 
 public class CollaborativeFiltering {
 
@@ -83,7 +61,12 @@ public class CollaborativeFiltering {
 		return ratings;
 	}
 	
-	static double rmse(Vector[] users, Vector[] movies, java.util.Vector<Rating> ratings) {
+	public static double rmse(Vector[] users, Vector[] movies, java.util.Vector<Rating> ratings) {
+		
+		// The factors as arrays once, for the dot product kernel
+		double[][] userFactors = toArrays(users);
+		double[][] movieFactors = toArrays(movies);
+		Kernels kernels = Kernels.get();
 		
 		double rmse = 0;
 		for (int i=0; i<ratings.size(); i++) {
@@ -92,7 +75,8 @@ public class CollaborativeFiltering {
 			int movieId = r.getMovieId();
 			double rating = r.getRating();
 			
-			rmse += Math.pow(users[userId].innerProduct(movies[movieId]) - rating, 2);
+			double[] user = userFactors[userId];
+			rmse += Math.pow(kernels.dot(user, movieFactors[movieId], user.length) - rating, 2);
 		}
 		
 		rmse = rmse/ratings.size();
@@ -100,6 +84,79 @@ public class CollaborativeFiltering {
 		return Math.sqrt(rmse);
 	}
 	
+	static double[][] toArrays(Vector[] vectors) {
+		double[][] arrays = new double[vectors.length][];
+		for (int i=0; i<vectors.length; i++) {
+			if (vectors[i] == null)
+				continue;
+			arrays[i] = new double[vectors[i].length()];
+			for (int j=0; j<arrays[i].length; j++)
+				arrays[i][j] = vectors[i].get(j);
+		}
+		return arrays;
+	}
+	
+	/*
+	 * One pass of mini-batch gradient descent over the ratings, in their current order
+	 */
+	public static void sgdEpoch(Vector[] users, Vector[] movies, java.util.Vector<Rating> ratings,
+			double gamma, double lambda, int batchSize) {
+		for (int i=0; i<ratings.size(); i+=batchSize) {
+			
+			HashMap<Integer, Vector> userTable = new HashMap<Integer, Vector>();
+			HashMap<Integer, Vector> movieTable = new HashMap<Integer, Vector>();
+			
+			java.util.List<Rating> batch = null;
+			if (i+batchSize >= ratings.size()) {
+				batch = ratings.subList(i, ratings.size());
+			} else {
+				batch = ratings.subList(i, i+batchSize);
+			}
+			
+			Iterator<Rating> rIter = batch.iterator();
+			while (rIter.hasNext()) {
+				Rating r = rIter.next();
+				int userId = r.getUserId();
+				int movieId = r.getMovieId();
+				
+				double error = r.getRating() - users[userId].innerProduct(movies[movieId]);
+				
+				//System.out.println(error);
+				
+				Vector userUpdate = movies[movieId].multiply(error).subtract(users[userId].multiply(lambda));
+				Vector movieUpdate = users[userId].multiply(error).subtract(movies[movieId].multiply(lambda));
+				
+				if (userTable.containsKey(userId)) {
+					userTable.put(userId, userTable.get(userId).add(userUpdate));
+				} else {
+					userTable.put(userId, userUpdate);
+				}
+				
+				if (movieTable.containsKey(movieId)) {
+					movieTable.put(movieId, movieTable.get(movieId).add(movieUpdate));
+				} else {
+					movieTable.put(movieId, movieUpdate);
+				}
+			}
+			
+			Iterator<Integer> userIds = userTable.keySet().iterator();
+			Iterator<Integer> movieIds = movieTable.keySet().iterator();
+			
+			while (userIds.hasNext()) {
+				int id = userIds.next();
+				users[id] = users[id].add(userTable.get(id).multiply(gamma));
+			}
+			
+			while (movieIds.hasNext()) {
+				int id = movieIds.next();
+				movies[id] = movies[id].add(movieTable.get(id).multiply(gamma));
+			}
+			
+			userTable.clear();
+			movieTable.clear();
+		}
+	}
+	
 	public static void main(String[] args) {
 		
 		/* MODEL PARAMETERS
@@ -165,60 +222,7 @@ public class CollaborativeFiltering {
 			Collections.shuffle(ratings);
 			System.out.println(iter);
 			
-			for (int i=0; i<ratings.size(); i+=batchSize) {
-				
-				HashMap<Integer, Vector> userTable = new HashMap<Integer, Vector>();
-				HashMap<Integer, Vector> movieTable = new HashMap<Integer, Vector>();
-				
-				java.util.List<Rating> batch = null;
-				if (i+batchSize >= ratings.size()) {
-					batch = ratings.subList(i, ratings.size());
-				} else {
-					batch = ratings.subList(i, i+batchSize);
-				}
-				
-				Iterator<Rating> rIter = batch.iterator();
-				while (rIter.hasNext()) {
-					Rating r = rIter.next();
-					int userId = r.getUserId();
-					int movieId = r.getMovieId();
-					
-					double error = r.getRating() - users[userId].innerProduct(movies[movieId]);
-					
-					//System.out.println(error);
-					
-					Vector userUpdate = movies[movieId].multiply(error).subtract(users[userId].multiply(lambda));
-					Vector movieUpdate = users[userId].multiply(error).subtract(movies[movieId].multiply(lambda));
-					
-					if (userTable.containsKey(userId)) {
-						userTable.put(userId, userTable.get(userId).add(userUpdate));
-					} else {
-						userTable.put(userId, userUpdate);
-					}
-					
-					if (movieTable.containsKey(movieId)) {
-						movieTable.put(movieId, movieTable.get(movieId).add(movieUpdate));
-					} else {
-						movieTable.put(movieId, movieUpdate);
-					}
-				}
-				
-				Iterator<Integer> userIds = userTable.keySet().iterator();
-				Iterator<Integer> movieIds = movieTable.keySet().iterator();
-				
-				while (userIds.hasNext()) {
-					int id = userIds.next();
-					users[id] = users[id].add(userTable.get(id).multiply(gamma));
-				}
-				
-				while (movieIds.hasNext()) {
-					int id = movieIds.next();
-					movies[id] = movies[id].add(movieTable.get(id).multiply(gamma));
-				}
-				
-				userTable.clear();
-				movieTable.clear();
-			}
+			sgdEpoch(users, movies, ratings, gamma, lambda, batchSize);
 			
 			//System.out.println(users[7].innerProduct(movies[1284]));
 			//System.out.println(rmse(users, movies, ratings));
@@ -0,0 +1,75 @@
+package main.kernels;
+
+/*
+ * Dense kernels of the inner loops over K topics or factors: dot product of
+ * two rows, and the element-wise product of two rows normalized to sum to 1.
+ * This class is the scalar implementation. The SIMD one (VectorKernels,
+ * jdk.incubator.vector) lives in src-simd, compiled apart so that src builds
+ * with a plain javac. get() returns it when it is on the classpath and the JVM
+ * runs with
+ *   --add-modules=jdk.incubator.vector
+ * and this one otherwise, or when -Dkernels.scalar=true.
+ * The scalar kernels add in index order, so they give the same results as the
+ * loops they replace; the SIMD ones add per lane and may differ in the last bits.
+ */
+
+public class Kernels {
+	
+	private static final Kernels SCALAR = new Kernels();
+	private static final Kernels BEST = load();
+	
+	// the fastest implementation available in this JVM
+	public static Kernels get(){
+		return BEST;
+	}
+	
+	// the scalar implementation, e.g. to compare with get()
+	public static Kernels scalar(){
+		return SCALAR;
+	}
+	
+	private static Kernels load(){
+		if(Boolean.getBoolean("kernels.scalar"))
+			return SCALAR;
+		try {
+			Kernels kernels = (Kernels) Class.forName("main.kernels.VectorKernels").getDeclaredConstructor().newInstance();
+			// the Vector API classes are only linked on first use
+			kernels.dot(new double[1], new double[1], 1);
+			return kernels;
+		} catch (LinkageError e) {
+			// jdk.incubator.vector is not in the module graph
+			return SCALAR;
+		} catch (ReflectiveOperationException e) {
+			// src-simd was not compiled
+			return SCALAR;
+		}
+	}
+	
+	protected Kernels(){
+	}
+	
+	public String name(){
+		return "scalar";
+	}
+	
+	// sum of a[i] * b[i] over [0, length)
+	public double dot(double[] a, double[] b, int length){
+		double sum = 0;
+		for(int i = 0; i < length; i++)
+			sum += a[i] * b[i];
+		return sum;
+	}
+	
+	// dst[i] = a[i] * b[i] / sum over [0, length), returns the sum before normalizing
+	public double multiplyNormalize(double[] a, double[] b, double[] dst, int length){
+		double sum = 0;
+		for(int i = 0; i < length; i++){
+			dst[i] = a[i] * b[i];
+			sum += dst[i];
+		}
+		double inv = 1.0 / sum;
+		for(int i = 0; i < length; i++)
+			dst[i] *= inv;
+		return sum;
+	}
+}
@@ -0,0 +1,194 @@
+package main.lda;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/*
+ * This class saves and restores the state of variational EM, so that a
+ * crashed run can resume and a new corpus can start from an older model.
+ * Each checkpoint is a directory iter-NNNNN holding alpha, beta, gamma,
+ * the vocabulary and a state file. The state file is written last, so a
+ * directory without it is an interrupted checkpoint and is ignored.
+ */
+
+public class Checkpoint {
+
+	// Name of the file marking a checkpoint as complete
+	private static final String STATE_FILE = "state.txt";
+
+	// Directory holding the checkpoints of one run
+	private File root;
+
+	// constructor
+	public Checkpoint(String dirname){
+		this.root = new File(dirname);
+	}
+
+	// Save the model after the given number of completed E-M iterations
+	// Older checkpoints are removed once the new one is complete
+	public void save(Model model, int iteration){
+		File dir = new File(this.root, String.format("iter-%05d", iteration));
+		model.dumpToDirectory(dir.getPath(), "Checkpoint after iteration " + iteration);
+
+		try {
+			PrintWriter writer = new PrintWriter(new File(dir, STATE_FILE), "UTF-8");
+			writer.println("iteration=" + iteration);
+			writer.println("nbrTopics=" + model.getNbrTopics());
+			writer.println("vocabSize=" + model.getVocabSize());
+			writer.println("nbrDocs=" + model.getGamma().size());
+			writer.close();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Could not write checkpoint state in " + dir, e);
+		}
+
+		// Only the latest complete checkpoint is kept
+		File[] children = this.root.listFiles();
+		for(File child : children){
+			if(child.isDirectory() && child.getName().startsWith("iter-") && !child.equals(dir))
+				deleteDirectory(child);
+		}
+		System.out.format("Checkpoint saved at : %s\n", dir.getPath());
+	}
+
+	// Restore alpha, beta and gamma from the latest checkpoint
+	// Returns the number of completed iterations, 0 if there is nothing to resume from
+	public int restore(Model model){
+		File dir = this.latest();
+		if(dir == null){
+			System.out.println("No checkpoint found in " + this.root + ", starting from scratch");
+			return 0;
+		}
+
+		Map<String, String> state = readState(dir);
+		if(Integer.parseInt(state.get("nbrTopics")) != model.getNbrTopics()
+				|| Integer.parseInt(state.get("vocabSize")) != model.getVocabSize()
+				|| Integer.parseInt(state.get("nbrDocs")) != model.getGamma().size())
+			throw new IllegalArgumentException("Checkpoint " + dir + " does not match the corpus and configs, use a warm start instead");
+
+		model.readAlphaFromFile(new File(dir, "alpha.txt").getPath());
+		model.readBetaFromFile(new File(dir, "beta.txt").getPath());
+		model.readGammaFromFile(new File(dir, "gamma.txt").getPath());
+
+		int iteration = Integer.parseInt(state.get("iteration"));
+		System.out.format("Resuming from %s after %d iterations\n", dir.getPath(), iteration);
+		return iteration;
+	}
+
+	// Latest complete checkpoint directory, null if none
+	public File latest(){
+		File[] children = this.root.listFiles();
+		if(children == null)
+			return null;
+
+		File latest = null;
+		for(File child : children){
+			if(!child.isDirectory() || !child.getName().startsWith("iter-") || !new File(child, STATE_FILE).isFile())
+				continue;
+			if(latest == null || child.getName().compareTo(latest.getName()) > 0)
+				latest = child;
+		}
+		return latest;
+	}
+
+	// Initialize alpha and beta from an existing model directory (a checkpoint directory,
+	// a single checkpoint or a dumped model). Words are matched by string when the model
+	// has its vocabulary.txt, words unknown to the old model get the smallest beta of their topic
+	public static void warmStart(Model model, String modelDir){
+		File dir = new File(modelDir);
+		File latest = new Checkpoint(modelDir).latest();
+		if(latest != null)
+			dir = latest;
+
+		int nbrTopics = model.getNbrTopics();
+		double[][] oldBeta = Model.readRowsFromFile(new File(dir, "beta.txt").getPath());
+		if(oldBeta.length != nbrTopics)
+			throw new IllegalArgumentException("Warm start model in " + dir + " has " + oldBeta.length + " topics, configs ask for " + nbrTopics);
+
+		model.readAlphaFromFile(new File(dir, "alpha.txt").getPath());
+
+		Vocabulary vocab = model.getVocabulary();
+		File oldVocabFile = new File(dir, "vocabulary.txt");
+		int[] oldIndex = new int[vocab.getVocabSize()];
+
+		if(oldVocabFile.isFile()){
+			// Remap the columns of beta by word
+			Vocabulary oldVocab = new Vocabulary(oldVocabFile);
+			Map<String, Integer> oldIds = new HashMap<String, Integer>();
+			for(int i = 0; i < oldVocab.getVocabSize(); i++)
+				oldIds.put(oldVocab.getWordAtIndex(i), i);
+
+			int matched = 0;
+			for(int j = 0; j < oldIndex.length; j++){
+				Integer id = oldIds.get(vocab.getWordAtIndex(j));
+				oldIndex[j] = (id == null) ? -1 : id;
+				if(id != null)
+					matched++;
+			}
+			System.out.format("Warm start : %d of %d words found in the old vocabulary\n", matched, oldIndex.length);
+		}
+		else {
+			// Without the old vocabulary, indices have to line up
+			if(oldBeta[0].length != oldIndex.length)
+				throw new IllegalArgumentException("Warm start model in " + dir + " has no vocabulary.txt and a different vocabulary size");
+			for(int j = 0; j < oldIndex.length; j++)
+				oldIndex[j] = j;
+		}
+
+		RealMatrix beta = new Array2DRowRealMatrix(nbrTopics, oldIndex.length);
+		Utilities utils = new Utilities();
+		for(int k = 0; k < nbrTopics; k++){
+			// Floor for words the old model has never seen
+			double floor = Double.MAX_VALUE;
+			for(double val : oldBeta[k])
+				if(val > 0 && val < floor)
+					floor = val;
+			if(floor == Double.MAX_VALUE)
+				floor = 1.0 / oldIndex.length;
+
+			double[] row = new double[oldIndex.length];
+			for(int j = 0; j < row.length; j++)
+				row[j] = (oldIndex[j] >= 0) ? Math.max(oldBeta[k][oldIndex[j]], floor) : floor;
+
+			beta.setRow(k, utils.normalize(row));
+		}
+		model.setBeta(beta);
+
+		System.out.format("Warm started from : %s\n", dir.getPath());
+	}
+
+	// Reads the key=value lines of a state file
+	private static Map<String, String> readState(File dir){
+		Map<String, String> state = new HashMap<String, String>();
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(new File(dir, STATE_FILE)));
+			String text = null;
+			while ((text = reader.readLine()) != null) {
+				int delimitPos = text.indexOf("=");
+				if(delimitPos > 0)
+					state.put(text.substring(0, delimitPos).trim(), text.substring(delimitPos + 1).trim());
+			}
+			reader.close();
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("Could not read checkpoint state in " + dir, e);
+		}
+		return state;
+	}
+
+	private static void deleteDirectory(File dir){
+		File[] children = dir.listFiles();
+		if(children != null)
+			for(File child : children)
+				child.delete();
+		dir.delete();
+	}
+}
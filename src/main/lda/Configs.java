@@ -30,6 +30,40 @@ public class Configs {
 	// Parameters for NR method
 	private double maxNRIterations, alphaChangeThreshold; 
 	
+	// Number of worker threads used for the parallel parts of E-M
+	private int nbrThreads;
+	
+	// Checkpointing : directory (null to disable) and number of E-M iterations between checkpoints
+	private String checkpointDir;
+	private int checkpointInterval;
+	
+	// Continue from the latest checkpoint in checkpointDir, if any
+	private boolean resume;
+	
+	// Existing model directory to initialize alpha and beta from (null for random init)
+	private String warmStartDir;
+	
+	// Residual scheduling of the E-step : documents whose gamma changed by less than
+	// residualThreshold (L1 change per word) are skipped, the rest are processed by
+	// decreasing residual, at most maxScheduledFraction of the corpus per iteration.
+	// Every fullSweepInterval iterations all the documents are processed again.
+	private boolean residualScheduling;
+	private double residualThreshold;
+	private double maxScheduledFraction;
+	private int fullSweepInterval;
+	
+	// Store beta, phi and gamma as floats (computations stay in double)
+	// On data/debug with 10 topics and 10 E-M iterations, alpha and gamma stay within 5e-8
+	// relative and beta within 1.2e-9 absolute of the double path (tests.ldaTests.PrecisionTest)
+	private boolean singlePrecision;
+	
+	// Vocabulary pruning at corpus load (see VocabularyPruning) : words in fewer than
+	// minDocFreq documents or in more than maxDocFraction of the documents are removed,
+	// then only the maxVocabSize most frequent ones are kept (0 for no limit)
+	private int minDocFreq;
+	private double maxDocFraction;
+	private int maxVocabSize;
+	
 	// constructor initializes stuff to default values
 	public Configs(){
 			
@@ -42,6 +76,29 @@ public class Configs {
 		// Parameters for NR method
 		this.setMaxNRIterations(1e3);
 		this.setAlphaChangeThreshold(1e-6);
+		
+		// Use all the available cores by default
+		this.nbrThreads = Runtime.getRuntime().availableProcessors();
+		
+		// No checkpoints, no warm start by default
+		this.checkpointDir = null;
+		this.checkpointInterval = 1;
+		this.resume = false;
+		this.warmStartDir = null;
+		
+		// Every document in every iteration by default
+		this.residualScheduling = false;
+		this.residualThreshold = 1e-3;
+		this.maxScheduledFraction = 1.0;
+		this.fullSweepInterval = 5;
+		
+		// Double precision storage by default
+		this.singlePrecision = false;
+		
+		// No pruning by default
+		this.minDocFreq = 1;
+		this.maxDocFraction = 1.0;
+		this.maxVocabSize = 0;
 	}
 	
 	// setters
@@ -101,5 +158,109 @@ public class Configs {
 	public void setAlphaChangeThreshold(double alphaChangeThreshold) {
 		this.alphaChangeThreshold = alphaChangeThreshold;
 	}
+
+	public int getNbrThreads() {
+		return nbrThreads;
+	}
+
+	public void setNbrThreads(int nbrThreads) {
+		this.nbrThreads = Math.max(1, nbrThreads);
+	}
+	
+	public String getCheckpointDir() {
+		return checkpointDir;
+	}
+
+	public void setCheckpointDir(String checkpointDir) {
+		this.checkpointDir = checkpointDir;
+	}
+
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = Math.max(1, checkpointInterval);
+	}
+
+	public boolean getResume() {
+		return resume;
+	}
+
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	public String getWarmStartDir() {
+		return warmStartDir;
+	}
+
+	public void setWarmStartDir(String warmStartDir) {
+		this.warmStartDir = warmStartDir;
+	}
+	
+	public boolean getResidualScheduling() {
+		return residualScheduling;
+	}
+
+	public void setResidualScheduling(boolean residualScheduling) {
+		this.residualScheduling = residualScheduling;
+	}
+
+	public double getResidualThreshold() {
+		return residualThreshold;
+	}
+
+	public void setResidualThreshold(double residualThreshold) {
+		this.residualThreshold = residualThreshold;
+	}
+
+	public double getMaxScheduledFraction() {
+		return maxScheduledFraction;
+	}
+
+	public void setMaxScheduledFraction(double maxScheduledFraction) {
+		this.maxScheduledFraction = Math.min(1.0, Math.max(0.0, maxScheduledFraction));
+	}
+
+	public int getFullSweepInterval() {
+		return fullSweepInterval;
+	}
+
+	public void setFullSweepInterval(int fullSweepInterval) {
+		this.fullSweepInterval = Math.max(1, fullSweepInterval);
+	}
+	
+	public boolean getSinglePrecision() {
+		return singlePrecision;
+	}
+
+	public void setSinglePrecision(boolean singlePrecision) {
+		this.singlePrecision = singlePrecision;
+	}
+	
+	public int getMinDocFreq() {
+		return minDocFreq;
+	}
+
+	public void setMinDocFreq(int minDocFreq) {
+		this.minDocFreq = Math.max(1, minDocFreq);
+	}
+
+	public double getMaxDocFraction() {
+		return maxDocFraction;
+	}
+
+	public void setMaxDocFraction(double maxDocFraction) {
+		this.maxDocFraction = Math.min(1.0, Math.max(0.0, maxDocFraction));
+	}
+
+	public int getMaxVocabSize() {
+		return maxVocabSize;
+	}
+
+	public void setMaxVocabSize(int maxVocabSize) {
+		this.maxVocabSize = Math.max(0, maxVocabSize);
+	}
 	
 }
@@ -1,6 +1,7 @@
 package main.lda;
 
 
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
@@ -9,6 +10,7 @@ import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.BufferedReader;
+import java.nio.file.Files;
 
 /*
  * This class models the corpus of documents
@@ -108,6 +110,75 @@ public class Corpus {
 		System.out.println("Successfully read corpus!");
 	}
 	
+	// Constructor from documents already in memory, their docIds are used as indices
+	public Corpus(List<Document> docs){
+		this.documents = docs;
+		this.nbrDocs = docs.size();
+		this.movieToIndexMap = new ConcurrentHashMap<Integer, Integer>();
+		for(Document doc : docs)
+			this.movieToIndexMap.put(doc.getMovieId(), doc.getDocId());
+	}
+	
+	// Build the corpus straight from raw plot summaries, one "wikiId<TAB>summary" line per movie,
+	// instead of the summaryfeatures file of the preprocessing. The file is read once as bytes
+	// and every summary is tokenized in place. Movies without any vocabulary word are skipped,
+	// as the preprocessing does.
+	public static Corpus fromSummaries(File summaries, Vocabulary vocab){
+		System.out.println("Reading and tokenizing the summaries...");
+		List<Document> docs = new ArrayList<Document>();
+		
+		byte[] text;
+		try {
+			text = Files.readAllBytes(summaries.toPath());
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("Could not read summaries " + summaries, e);
+		}
+		
+		int lineStart = 0;
+		while(lineStart < text.length){
+			int lineEnd = lineStart;
+			while(lineEnd < text.length && text[lineEnd] != '\n')
+				lineEnd++;
+			
+			int tab = lineStart;
+			while(tab < lineEnd && text[tab] != '\t')
+				tab++;
+			
+			if(tab < lineEnd){
+				int movieId = Integer.parseInt(new String(text, lineStart, tab - lineStart, Charset.forName("UTF-8")).trim());
+				int[] ids = vocab.tokenize(text, tab + 1, lineEnd - tab - 1);
+				if(ids.length > 0){
+					List<Integer> features = new ArrayList<Integer>(ids.length);
+					for(int id : ids)
+						features.add(id);
+					docs.add(new Document(features, movieId, docs.size()));
+				}
+			}
+			lineStart = lineEnd + 1;
+		}
+		
+		System.out.println("Successfully read corpus!");
+		return new Corpus(docs);
+	}
+	
+	// The contiguous part of the corpus handled by one of nbrShards workers
+	// Documents get local ids in the shard, the word lists are shared with this corpus
+	public Corpus shard(int index, int nbrShards){
+		if(index < 0 || index >= nbrShards)
+			throw new IllegalArgumentException("Shard " + index + " out of " + nbrShards);
+		
+		int start = (int) ((long) this.nbrDocs * index / nbrShards);
+		int end = (int) ((long) this.nbrDocs * (index + 1) / nbrShards);
+		
+		List<Document> docs = new ArrayList<Document>(end - start);
+		for(int i = start; i < end; i++){
+			Document doc = this.documents.get(i);
+			docs.add(new Document(doc.getWordIds(), doc.getMovieId(), i - start));
+		}
+		return new Corpus(docs);
+	}
+	
 	public ConcurrentHashMap<Integer, Integer> getMovieToIndexMap(){
 		return this.movieToIndexMap;
 	}
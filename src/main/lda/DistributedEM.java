@@ -0,0 +1,134 @@
+package main.lda;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/*
+ * This class runs variational EM over several processes (or machines).
+ * Each worker owns a shard of the corpus and runs the E-step on it, then
+ * sends the sufficient statistics of its shard (K x V expected word counts
+ * and the K-vector of gamma statistics) to the coordinator. The coordinator
+ * adds them up, runs the M-step of EstimatorBlock and broadcasts the new
+ * alpha and beta. Neither phi nor gamma ever leave the workers, so the
+ * coordinator only needs memory for the parameters and the statistics.
+ * The messages go through an EMTransport (sockets or a shared directory).
+ */
+
+public class DistributedEM {
+	
+	// Coordinator : returns the model holding the final alpha and beta
+	public Model coordinate(Configs conf, Vocabulary vocab, EMTransport transport) throws IOException {
+		// Same random start as a single process model
+		Model model = new Model();
+		model.initParameters(conf, vocab);
+		EstimatorBlock estBlock = new EstimatorBlock();
+		
+		int maxIters = conf.getEmIters();
+		for(int iters = 0; iters < maxIters; iters++){
+			System.out.println("Running distributed iteration " + iters);
+			transport.sendParameters(parameters(model, iters, false));
+			
+			// Reduce in worker order, so the result does not depend on who answers first
+			SufficientStats[] shardStats = transport.receiveStats(iters);
+			SufficientStats stats = new SufficientStats(model.getNbrTopics(), model.getVocabSize());
+			for(SufficientStats shard : shardStats)
+				stats.add(shard);
+			
+			// M-step
+			estBlock.estimate(model, stats, conf);
+		}
+		
+		// Final parameters, the workers stop after receiving them
+		transport.sendParameters(parameters(model, maxIters, true));
+		return model;
+	}
+	
+	// Worker : runs the E-step on its shard until the coordinator is done
+	// Returns the model of the shard, holding its gamma and the final alpha and beta
+	public Model work(Corpus shard, Configs conf, Vocabulary vocab, EMTransport transport) throws IOException {
+		Model model = new Model();
+		model.initModel(shard, conf, vocab);
+		TopicModeler tm = new TopicModeler();
+		EstimatorBlock estBlock = new EstimatorBlock();
+		
+		double[] residuals = new double[shard.getNbrDocs()];
+		Arrays.fill(residuals, Double.POSITIVE_INFINITY);
+		
+		for(int iters = 0; ; iters++){
+			EMTransport.Parameters params = transport.receiveParameters(iters);
+			if(params.alpha.length != model.getNbrTopics() || params.beta[0].length != model.getVocabSize())
+				throw new IllegalArgumentException("Coordinator parameters are " + params.alpha.length + " x " + params.beta[0].length
+						+ ", worker configs and vocabulary give " + model.getNbrTopics() + " x " + model.getVocabSize());
+			
+			model.setAlpha(new ArrayRealVector(params.alpha, false));
+			model.setBeta(new Array2DRowRealMatrix(params.beta, false));
+			if(params.done)
+				break;
+			
+			// E-step on the shard only
+			tm.expectationStep(shard, model, conf, residuals, iters);
+			transport.sendStats(iters, estBlock.computeStats(shard, model, conf));
+		}
+		
+		return model;
+	}
+	
+	private static EMTransport.Parameters parameters(Model model, int iteration, boolean done){
+		RealMatrix beta = model.getBeta();
+		double[][] rows = new double[beta.getRowDimension()][];
+		for(int k = 0; k < rows.length; k++)
+			rows[k] = beta.getRow(k);
+		return new EMTransport.Parameters(iteration, done, model.getAlpha().toArray(), rows);
+	}
+	
+	/************************************************************/
+	// Command line, one process per role :
+	//   coordinator <vocabulary> <port> <nbrWorkers> <nbrTopics> <emIters> <outputDir>
+	//   worker <corpus> <vocabulary> <host> <port> <workerId> <nbrWorkers> <nbrTopics>
+	// The corpus is sharded by position, every worker reads the whole file and keeps its part
+	public static void main(String[] args) throws IOException {
+		if(args.length == 7 && args[0].equals("coordinator")){
+			Vocabulary vocab = new Vocabulary(new File(args[1]));
+			Configs conf = new Configs();
+			conf.setNbrTopics(Integer.parseInt(args[4]));
+			conf.setEmIters(Integer.parseInt(args[5]));
+			
+			EMTransport transport = SocketTransport.coordinator(Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+			try {
+				Model model = new DistributedEM().coordinate(conf, vocab, transport);
+				new File(args[6]).mkdirs();
+				model.dumpAlphaToFile(new File(args[6], "alpha.txt").getPath());
+				model.dumpBetaToFile(new File(args[6], "beta.txt").getPath());
+				vocab.dumpToFile(new File(args[6], "vocabulary.txt").getPath());
+			}
+			finally {
+				transport.close();
+			}
+		}
+		else if(args.length == 8 && args[0].equals("worker")){
+			Vocabulary vocab = new Vocabulary(new File(args[2]));
+			int workerId = Integer.parseInt(args[5]);
+			Corpus shard = new Corpus(new File(args[1])).shard(workerId, Integer.parseInt(args[6]));
+			Configs conf = new Configs();
+			conf.setNbrTopics(Integer.parseInt(args[7]));
+			
+			EMTransport transport = SocketTransport.worker(args[3], Integer.parseInt(args[4]), workerId);
+			try {
+				new DistributedEM().work(shard, conf, vocab, transport);
+			}
+			finally {
+				transport.close();
+			}
+		}
+		else {
+			System.out.println("Usage : DistributedEM coordinator <vocabulary> <port> <nbrWorkers> <nbrTopics> <emIters> <outputDir>");
+			System.out.println("        DistributedEM worker <corpus> <vocabulary> <host> <port> <workerId> <nbrWorkers> <nbrTopics>");
+		}
+	}
+	/************************************************************/
+}
@@ -0,0 +1,79 @@
+package main.lda;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/*
+ * This interface carries the messages of distributed variational EM between
+ * the coordinator and its workers. Every iteration the coordinator sends
+ * alpha and beta to all the workers, and each worker answers with the
+ * sufficient statistics of its shard. Only the K x V statistics and the
+ * parameters go over the transport, never phi or gamma.
+ * A transport is opened either as the coordinator or as one worker, the
+ * methods of the other role throw IllegalStateException.
+ */
+
+public interface EMTransport {
+	
+	// coordinator side : broadcast the parameters of an iteration
+	// done marks the final parameters, workers stop after receiving them
+	void sendParameters(Parameters params) throws IOException;
+	
+	// coordinator side : statistics of every worker for an iteration, in worker order
+	SufficientStats[] receiveStats(int iteration) throws IOException;
+	
+	// worker side : wait for the parameters of an iteration
+	Parameters receiveParameters(int iteration) throws IOException;
+	
+	// worker side : send the statistics of the shard for an iteration
+	void sendStats(int iteration, SufficientStats stats) throws IOException;
+	
+	void close() throws IOException;
+	
+	/*
+	 * Alpha and beta for one iteration of the E-step
+	 */
+	public static class Parameters {
+		public int iteration;
+		public boolean done;
+		public double[] alpha;
+		public double[][] beta;
+		
+		public Parameters(int iteration, boolean done, double[] alpha, double[][] beta){
+			this.iteration = iteration;
+			this.done = done;
+			this.alpha = alpha;
+			this.beta = beta;
+		}
+		
+		// Binary form : iteration, done, nbrTopics, vocabSize, alpha then beta row by row
+		public void writeTo(DataOutputStream out) throws IOException {
+			out.writeInt(this.iteration);
+			out.writeBoolean(this.done);
+			out.writeInt(this.beta.length);
+			out.writeInt(this.beta[0].length);
+			for(double val : this.alpha)
+				out.writeDouble(val);
+			for(double[] row : this.beta)
+				for(double val : row)
+					out.writeDouble(val);
+			out.flush();
+		}
+		
+		public static Parameters readFrom(DataInputStream in) throws IOException {
+			int iteration = in.readInt();
+			boolean done = in.readBoolean();
+			int nbrTopics = in.readInt();
+			int vocabSize = in.readInt();
+			double[] alpha = new double[nbrTopics];
+			for(int k = 0; k < nbrTopics; k++)
+				alpha[k] = in.readDouble();
+			double[][] beta = new double[nbrTopics][vocabSize];
+			for(int k = 0; k < nbrTopics; k++)
+				for(int w = 0; w < vocabSize; w++)
+					beta[k][w] = in.readDouble();
+			return new Parameters(iteration, done, alpha, beta);
+		}
+	}
+}
@@ -6,10 +6,9 @@ import main.lda.Configs;
 import main.lda.Corpus;
 import main.lda.Model;
 
-import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
-import org.apache.commons.math3.stat.StatUtils;
 
 /*
  * This module estimates the topic model, i.e. maximises the lower bound on
@@ -20,50 +19,32 @@ import org.apache.commons.math3.stat.StatUtils;
 public class EstimatorBlock {
 	
 	// do parameter estimation of \alpha and \beta
-	public void estimate(Corpus corpus, Model model, Configs conf){
+	public void estimate(final Corpus corpus, Model model, Configs conf){
 		
 		// Extract the relevant info
 		int nbrTopics = model.getNbrTopics();
-		int vocabSize = model.getVocabSize();
-		int nbrDocs = corpus.getNbrDocs();
-		int nbrWords;
-		List<Document> documents = corpus.getDocs();
-		Document doc;
 		RealVector alpha = model.getAlpha();
-		RealMatrix phi;
-		List<RealMatrix> phiAll = model.getPhi(); 
-		List<Integer> docWords;
-		Utilities utils = new Utilities();
+		final List<RealMatrix> phiAll = model.getPhi(); 
+		final Utilities utils = new Utilities();
 		
 		// estimate beta
 		//RealMatrix beta = new Array2DRowRealMatrix(nbrTopics, vocabSize);
 		//Using the previous beta from the model
-		RealMatrix beta = model.getBeta();
+		final RealMatrix beta = model.getBeta();
 		
-		// For each document
-		for(int docId = 0; docId < nbrDocs; docId++){
-			doc = documents.get(docId);
-			docWords = doc.getWordIds();
-			nbrWords = doc.getDocSize();
-			phi = phiAll.get(docId);
-			
-			// For each word in the document
-			for(int n = 0; n < nbrWords; n++){
-				int wordId = docWords.get(n);
-				
-				// Column of beta corresponding to the current word found in the document
-				RealVector betaWordCol = beta.getColumnVector(wordId);
-				RealVector phiWordCol = phi.getColumnVector(n);
-				
-				beta.setColumnVector(wordId, betaWordCol.add(phiWordCol));
+		// Each row of beta only needs the same row of every phi, so topics are split over the threads
+		// The row is accumulated in double whatever the storage precision of the model
+		utils.parallelChunks(nbrTopics, conf.getNbrThreads(), new Utilities.ChunkTask(){
+			public void run(int chunk, int start, int end){
+				for(int topicId = start; topicId < end; topicId++){
+					double[] betaRow = beta.getRow(topicId);
+					addWordCounts(betaRow, topicId, corpus, phiAll);
+					
+					// Normalize the beta matrix along rows
+					beta.setRow(topicId, utils.normalize(betaRow));
+				}
 			}
-		}
-		
-		// For each topic
-		for(int topicId = 0; topicId < nbrTopics; topicId++)
-		// Normalize the beta matrix along rows
-			beta.setRow(topicId, utils.normalize(beta.getRow(topicId)));
-
+		});
 
 		// Estimate alpha by Newton-Raphson iterations
 		
@@ -74,4 +55,62 @@ public class EstimatorBlock {
 		model.setBeta(beta);
 		model.setAlpha(alpha);
 	}
+	
+	// Sufficient statistics of the documents of this corpus only, for a coordinator
+	// that estimates alpha and beta from several shards (see DistributedEM)
+	public SufficientStats computeStats(final Corpus corpus, Model model, Configs conf){
+		final List<RealMatrix> phiAll = model.getPhi();
+		final SufficientStats stats = new SufficientStats(model.getNbrTopics(), model.getVocabSize());
+		Utilities utils = new Utilities();
+		
+		utils.parallelChunks(model.getNbrTopics(), conf.getNbrThreads(), new Utilities.ChunkTask(){
+			public void run(int chunk, int start, int end){
+				for(int topicId = start; topicId < end; topicId++)
+					addWordCounts(stats.getBeta()[topicId], topicId, corpus, phiAll);
+			}
+		});
+		
+		stats.setAlpha(utils.computeAlphaSuffStats(model.getGamma(), conf.getNbrThreads()).toArray());
+		stats.setNbrDocs(corpus.getNbrDocs());
+		return stats;
+	}
+	
+	// M-step from statistics summed over all the documents, same update as estimate()
+	public void estimate(Model model, SufficientStats stats, Configs conf){
+		final RealMatrix beta = model.getBeta();
+		final double[][] betaStats = stats.getBeta();
+		final Utilities utils = new Utilities();
+		
+		utils.parallelChunks(model.getNbrTopics(), conf.getNbrThreads(), new Utilities.ChunkTask(){
+			public void run(int chunk, int start, int end){
+				for(int topicId = start; topicId < end; topicId++){
+					double[] betaRow = beta.getRow(topicId);
+					for(int w = 0; w < betaRow.length; w++)
+						betaRow[w] += betaStats[topicId][w];
+					beta.setRow(topicId, utils.normalize(betaRow));
+				}
+			}
+		});
+		
+		System.out.println("Entering NR iterations");
+		RealVector alpha = utils.performNR(conf, model.getAlpha(), new ArrayRealVector(stats.getAlpha()), stats.getNbrDocs());
+		
+		model.setBeta(beta);
+		model.setAlpha(alpha);
+	}
+	
+	// Add the expected word counts of one topic, sum over documents of phi, to row
+	private void addWordCounts(double[] row, int topicId, Corpus corpus, List<RealMatrix> phiAll){
+		List<Document> documents = corpus.getDocs();
+		
+		// For each document
+		for(int docId = 0; docId < documents.size(); docId++){
+			List<Integer> docWords = documents.get(docId).getWordIds();
+			RealMatrix phi = phiAll.get(docId);
+			
+			// For each word in the document
+			for(int n = 0; n < docWords.size(); n++)
+				row[docWords.get(n)] += phi.getEntry(topicId, n);
+		}
+	}
 }
@@ -0,0 +1,135 @@
+package main.lda;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/*
+ * Shared directory transport for distributed EM, for workers that can see a
+ * common (e.g. network) file system but can not open connections to each
+ * other. Every message is a file written under a temporary name and renamed
+ * once complete, readers poll the directory until it shows up.
+ *   params-IIIII.bin      : parameters of iteration IIIII
+ *   stats-IIIII-WWW.bin   : statistics of worker WWW for iteration IIIII
+ */
+
+public class FileTransport implements EMTransport {
+	
+	// Delay between two looks at the directory
+	private static final long POLL_MILLIS = 100;
+	
+	private File dir;
+	private int nbrWorkers;
+	
+	// Id of this worker, -1 for the coordinator
+	private int workerId;
+	
+	// constructor, workerId is -1 for the coordinator
+	public FileTransport(String dirname, int nbrWorkers, int workerId){
+		this.dir = new File(dirname);
+		this.dir.mkdirs();
+		this.nbrWorkers = nbrWorkers;
+		this.workerId = workerId;
+		
+		// Messages left over by an earlier run would be taken for this one
+		if(workerId < 0){
+			File[] children = this.dir.listFiles();
+			for(File child : children)
+				if(child.getName().startsWith("params-") || child.getName().startsWith("stats-"))
+					child.delete();
+		}
+	}
+	
+	public void sendParameters(Parameters params) throws IOException {
+		this.checkRole(true);
+		DataOutputStream out = this.create(this.paramsFile(params.iteration));
+		params.writeTo(out);
+		this.publish(out, this.paramsFile(params.iteration));
+	}
+	
+	public SufficientStats[] receiveStats(int iteration) throws IOException {
+		this.checkRole(true);
+		SufficientStats[] stats = new SufficientStats[this.nbrWorkers];
+		for(int i = 0; i < this.nbrWorkers; i++){
+			File file = this.statsFile(iteration, i);
+			DataInputStream in = this.await(file);
+			try {
+				stats[i] = SufficientStats.readFrom(in);
+			}
+			finally {
+				in.close();
+			}
+			file.delete();
+		}
+		
+		// Every worker has read these parameters once it answered
+		this.paramsFile(iteration).delete();
+		return stats;
+	}
+	
+	public Parameters receiveParameters(int iteration) throws IOException {
+		this.checkRole(false);
+		DataInputStream in = this.await(this.paramsFile(iteration));
+		try {
+			return Parameters.readFrom(in);
+		}
+		finally {
+			in.close();
+		}
+	}
+	
+	public void sendStats(int iteration, SufficientStats stats) throws IOException {
+		this.checkRole(false);
+		File file = this.statsFile(iteration, this.workerId);
+		DataOutputStream out = this.create(file);
+		stats.writeTo(out);
+		this.publish(out, file);
+	}
+	
+	public void close() throws IOException {
+	}
+	
+	private File paramsFile(int iteration){
+		return new File(this.dir, String.format("params-%05d.bin", iteration));
+	}
+	
+	private File statsFile(int iteration, int worker){
+		return new File(this.dir, String.format("stats-%05d-%03d.bin", iteration, worker));
+	}
+	
+	private DataOutputStream create(File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+	}
+	
+	// Close the temporary file and make it visible under its final name
+	private void publish(DataOutputStream out, File file) throws IOException {
+		out.close();
+		File tmp = new File(file.getPath() + ".tmp");
+		if(!tmp.renameTo(file))
+			throw new IOException("Could not rename " + tmp + " to " + file);
+	}
+	
+	private DataInputStream await(File file) throws IOException {
+		while(!file.isFile()){
+			try {
+				Thread.sleep(POLL_MILLIS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for " + file, e);
+			}
+		}
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+	}
+	
+	private void checkRole(boolean coordinatorCall){
+		if(coordinatorCall != (this.workerId < 0))
+			throw new IllegalStateException("Transport opened as " + (this.workerId < 0 ? "coordinator" : "worker " + this.workerId));
+	}
+}
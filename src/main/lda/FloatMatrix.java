@@ -0,0 +1,88 @@
+package main.lda;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.linear.AbstractRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/*
+ * Dense matrix that stores its entries as floats, half the memory of
+ * Array2DRowRealMatrix. Entries are read and written as doubles, so callers
+ * keep computing in double precision and only the storage is rounded.
+ * Used for beta and phi when Configs asks for single precision storage.
+ */
+
+public class FloatMatrix extends AbstractRealMatrix {
+	
+	// Row major storage, data[row][column]
+	private float[][] data;
+	
+	// constructor for a zero matrix
+	public FloatMatrix(int rowDimension, int columnDimension){
+		super(rowDimension, columnDimension);
+		this.data = new float[rowDimension][columnDimension];
+	}
+	
+	// constructor rounding the entries of another matrix
+	public FloatMatrix(RealMatrix m){
+		this(m.getRowDimension(), m.getColumnDimension());
+		for(int i = 0; i < this.data.length; i++)
+			this.setRow(i, m.getRow(i));
+	}
+	
+	@Override
+	public int getRowDimension(){
+		return this.data.length;
+	}
+	
+	@Override
+	public int getColumnDimension(){
+		return (this.data.length == 0) ? 0 : this.data[0].length;
+	}
+	
+	@Override
+	public RealMatrix createMatrix(int rowDimension, int columnDimension){
+		return new FloatMatrix(rowDimension, columnDimension);
+	}
+	
+	@Override
+	public RealMatrix copy(){
+		FloatMatrix copy = new FloatMatrix(this.getRowDimension(), this.getColumnDimension());
+		for(int i = 0; i < this.data.length; i++)
+			System.arraycopy(this.data[i], 0, copy.data[i], 0, this.data[i].length);
+		return copy;
+	}
+	
+	@Override
+	public double getEntry(int row, int column){
+		return this.data[row][column];
+	}
+	
+	@Override
+	public void setEntry(int row, int column, double value){
+		this.data[row][column] = (float) value;
+	}
+	
+	@Override
+	public void addToEntry(int row, int column, double increment){
+		this.data[row][column] = (float) (this.data[row][column] + increment);
+	}
+	
+	// Row access without going through the entry by entry defaults
+	@Override
+	public double[] getRow(int row){
+		float[] stored = this.data[row];
+		double[] out = new double[stored.length];
+		for(int j = 0; j < stored.length; j++)
+			out[j] = stored[j];
+		return out;
+	}
+	
+	@Override
+	public void setRow(int row, double[] array){
+		float[] stored = this.data[row];
+		if(array.length != stored.length)
+			throw new DimensionMismatchException(array.length, stored.length);
+		for(int j = 0; j < stored.length; j++)
+			stored[j] = (float) array[j];
+	}
+}
@@ -0,0 +1,129 @@
+package main.lda;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.linear.RealVectorFormat;
+
+/*
+ * Vector that stores its entries as floats, the counterpart of FloatMatrix
+ * for gamma. Arithmetic returns ArrayRealVector, i.e. it is done in double.
+ */
+
+public class FloatVector extends RealVector {
+	
+	private float[] data;
+	
+	// constructor for a zero vector
+	public FloatVector(int size){
+		this.data = new float[size];
+	}
+	
+	// constructor rounding the entries of another vector
+	public FloatVector(RealVector v){
+		this(v.getDimension());
+		for(int i = 0; i < this.data.length; i++)
+			this.data[i] = (float) v.getEntry(i);
+	}
+	
+	@Override
+	public int getDimension(){
+		return this.data.length;
+	}
+	
+	@Override
+	public double getEntry(int index){
+		return this.data[index];
+	}
+	
+	@Override
+	public void setEntry(int index, double value){
+		this.data[index] = (float) value;
+	}
+	
+	@Override
+	public double[] toArray(){
+		double[] out = new double[this.data.length];
+		for(int i = 0; i < out.length; i++)
+			out[i] = this.data[i];
+		return out;
+	}
+	
+	@Override
+	public RealVector append(RealVector v){
+		return new ArrayRealVector(this.toArray(), v.toArray());
+	}
+	
+	@Override
+	public RealVector append(double d){
+		return new ArrayRealVector(this.toArray(), new double[]{d});
+	}
+	
+	@Override
+	public RealVector getSubVector(int index, int n){
+		double[] sub = new double[n];
+		for(int i = 0; i < n; i++)
+			sub[i] = this.data[index + i];
+		return new ArrayRealVector(sub, false);
+	}
+	
+	@Override
+	public void setSubVector(int index, RealVector v){
+		for(int i = 0; i < v.getDimension(); i++)
+			this.data[index + i] = (float) v.getEntry(i);
+	}
+	
+	@Override
+	public boolean isNaN(){
+		for(float val : this.data)
+			if(Float.isNaN(val))
+				return true;
+		return false;
+	}
+	
+	@Override
+	public boolean isInfinite(){
+		if(this.isNaN())
+			return false;
+		for(float val : this.data)
+			if(Float.isInfinite(val))
+				return true;
+		return false;
+	}
+	
+	@Override
+	public RealVector copy(){
+		FloatVector copy = new FloatVector(this.data.length);
+		System.arraycopy(this.data, 0, copy.data, 0, this.data.length);
+		return copy;
+	}
+	
+	@Override
+	public RealVector ebeMultiply(RealVector v){
+		this.checkDimension(v);
+		double[] out = this.toArray();
+		for(int i = 0; i < out.length; i++)
+			out[i] *= v.getEntry(i);
+		return new ArrayRealVector(out, false);
+	}
+	
+	@Override
+	public RealVector ebeDivide(RealVector v){
+		this.checkDimension(v);
+		double[] out = this.toArray();
+		for(int i = 0; i < out.length; i++)
+			out[i] /= v.getEntry(i);
+		return new ArrayRealVector(out, false);
+	}
+	
+	// Same format as ArrayRealVector, so dumps look the same in both precisions
+	@Override
+	public String toString(){
+		return RealVectorFormat.getInstance().format(this);
+	}
+	
+	private void checkDimension(RealVector v){
+		if(v.getDimension() != this.data.length)
+			throw new DimensionMismatchException(v.getDimension(), this.data.length);
+	}
+}
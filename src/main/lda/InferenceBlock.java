@@ -9,6 +9,8 @@ import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.special.Gamma;
 import org.apache.commons.math3.stat.StatUtils;
 
+import main.kernels.Kernels;
+
 /*
  * This module carries out variational inference to learn the
  * optimizing values of the variational parameters \gamma
@@ -176,40 +178,55 @@ public class InferenceBlock {
 		// Initializing parameters and variables
 		// This is the variational inference algorithm in the LDA paper
 		int docIndex = doc.getDocId();
-		int nTops = model.getNbrTopics();
-		int nWords = doc.getDocSize();
 		
-		List<Integer> words = doc.getWordIds();
+		// Initialize phi
+		RealMatrix phi = new Array2DRowRealMatrix(model.getNbrTopics(), doc.getDocSize());
+		RealVector gamma = this.fitDocument(doc.getWordIds(), model.getAlpha(), model.getBeta(), conf, phi);
+		
+		// Update the model
+		model.setGammaSingle(gamma, docIndex);
+		model.setPhiSingle(phi, docIndex);
+	}
+	
+	// Fold-in : gamma of a document that is not part of the model (e.g. a new movie)
+	// beta can be any RealMatrix, dense, memory-mapped or sparse (SparseBeta)
+	public RealVector foldIn(Document doc, RealVector alpha, RealMatrix beta, Configs conf){
+		RealMatrix phi = new Array2DRowRealMatrix(beta.getRowDimension(), doc.getDocSize());
+		return this.fitDocument(doc.getWordIds(), alpha, beta, conf, phi);
+	}
+	
+	// Variational updates of phi (filled in place) and gamma for the words of a document
+	private RealVector fitDocument(List<Integer> words, RealVector alpha, RealMatrix beta, Configs conf, RealMatrix phi){
+		int nTops = beta.getRowDimension();
+		int nWords = words.size();
 		Utilities utils = new Utilities();
-		RealVector gammaIncrement;
 		
-		// Get alpha and beta
-		RealVector alpha = model.getAlpha();
-		RealMatrix beta = model.getBeta();
-
-		// Initialize phi
-		RealMatrix phi = new Array2DRowRealMatrix(nTops, nWords);
-		//phi = phi.scalarAdd(1.0/(double) nTops);
+		// Column of beta for every word, read once instead of every iteration
+		double[][] betaCols = new double[nWords][nTops];
+		for(int n = 0; n < nWords; n++){
+			int wordindex = words.get(n);
+			for(int i = 0; i < nTops; i++)
+				betaCols[n][i] = beta.getEntry(i, wordindex);
+		}
 
 		// Initialize gamma (these are without adding alphas) (following matlab implementation)
 		RealVector gamma = new ArrayRealVector(nTops, nWords/(double)nTops); // Alpha needs to be added
 		RealVector prevGamma = gamma;
 		
+		Kernels kernels = Kernels.get();
+		double[] expDiGamma = new double[nTops];
+		double[] phiCol = new double[nTops];
+		
 		// Convergence
 		for(int iters = 0; iters < conf.getVarIters(); iters++){
-			int wordindex;
-			RealVector phiCol;
+			// exp(digamma(gamma + alpha)) only changes with gamma, i.e. once per iteration
+			for(int i = 0; i < nTops; i++)
+				expDiGamma[i] = Math.exp(utils.diGamma(gamma.getEntry(i) + alpha.getEntry(i)));
+			
 			for(int n = 0; n < nWords; n++){
-				wordindex = words.get(n);
-
-				phiCol = phi.getColumnVector(n);
-				for(int i = 0; i<nTops; i++){
-					phiCol.setEntry(i, (beta.getEntry(i, wordindex) *
-							Math.exp(utils.diGamma(gamma.getEntry(i) + alpha.getEntry(i)))));
-				}
-				
-				// normalize phiCol and set it back to phi
-				phi.setColumn(n, utils.normalize(phiCol.toArray()));
+				// phiCol = beta column times exp(digamma), normalized, then set back to phi
+				kernels.multiplyNormalize(betaCols[n], expDiGamma, phiCol, nTops);
+				phi.setColumn(n, phiCol);
 			}
 
 			// update \gamma
@@ -223,9 +240,6 @@ public class InferenceBlock {
 			
 		}
 		
-		gamma = alpha.add(gamma);
-		// Update the model
-		model.setGammaSingle(gamma, docIndex);
-		model.setPhiSingle(phi, docIndex);
+		return alpha.add(gamma);
 	}
 }
\ No newline at end of file
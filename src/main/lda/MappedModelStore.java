@@ -0,0 +1,311 @@
+package main.lda;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.exception.MathUnsupportedOperationException;
+import org.apache.commons.math3.linear.AbstractRealMatrix;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+
+/*
+ * This class is a read-only, memory-mapped copy of a trained model for the
+ * serving processes. Alpha, beta, gamma and the movie id of every document
+ * live in a single binary file which is mapped rather than read, so the
+ * model stays off the Java heap, every process on the host shares the same
+ * pages through the page cache and opening it costs next to nothing.
+ *
+ * File layout (little endian) :
+ *   header  : magic, version, bytes per entry (4 or 8), nbrTopics, vocabSize, nbrDocs
+ *   alpha   : nbrTopics doubles
+ *   beta    : nbrTopics rows of vocabSize entries
+ *   gamma   : nbrDocs rows of nbrTopics entries
+ *   movies  : nbrDocs ints, the wikipedia movie id of each gamma row
+ */
+
+public class MappedModelStore {
+
+	private static final int MAGIC = 0x4C44414D;	// "LDAM"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 6 * 4;
+
+	// Largest mapping, a single MappedByteBuffer can not go over 2GB
+	private static final long MAX_CHUNK_BYTES = Integer.MAX_VALUE;
+
+	private int nbrTopics;
+	private int vocabSize;
+	private int nbrDocs;
+	private int entryBytes;
+
+	private double[] alpha;
+	private Section beta;
+	private Section gamma;
+
+	// Map from wikipedia movie id to gamma row
+	private Map<Integer, Integer> movieToIndexMap;
+
+	private MappedModelStore(){
+	}
+
+	/*
+	 * Writing
+	 */
+
+	// Write a trained model, entries are floats if the model is stored in single precision
+	public static void write(Model model, String filename){
+		int nbrTopics = model.getNbrTopics();
+		int vocabSize = model.getVocabSize();
+		List<Document> docs = model.getCorpus().getDocs();
+		int entryBytes = model.isSinglePrecision() ? 4 : 8;
+
+		try {
+			RandomAccessFile file = new RandomAccessFile(new File(filename), "rw");
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(entryBytes);
+			buffer.putInt(nbrTopics).putInt(vocabSize).putInt(docs.size());
+
+			RealVector alpha = model.getAlpha();
+			for(int k = 0; k < nbrTopics; k++)
+				buffer = put(channel, buffer, alpha.getEntry(k), 8);
+
+			RealMatrix beta = model.getBeta();
+			for(int k = 0; k < nbrTopics; k++){
+				double[] row = beta.getRow(k);
+				for(int w = 0; w < vocabSize; w++)
+					buffer = put(channel, buffer, row[w], entryBytes);
+			}
+
+			List<RealVector> gamma = model.getGamma();
+			for(int d = 0; d < docs.size(); d++)
+				for(int k = 0; k < nbrTopics; k++)
+					buffer = put(channel, buffer, gamma.get(d).getEntry(k), entryBytes);
+
+			for(Document doc : docs){
+				if(buffer.remaining() < 4)
+					buffer = flush(channel, buffer);
+				buffer.putInt(doc.getMovieId());
+			}
+
+			flush(channel, buffer);
+			channel.force(true);
+			file.close();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Could not write model store " + filename, e);
+		}
+
+		System.out.format("Model store written at : %s\n", filename);
+	}
+
+	private static ByteBuffer put(FileChannel channel, ByteBuffer buffer, double value, int entryBytes) throws IOException {
+		if(buffer.remaining() < entryBytes)
+			buffer = flush(channel, buffer);
+		if(entryBytes == 4)
+			buffer.putFloat((float) value);
+		else
+			buffer.putDouble(value);
+		return buffer;
+	}
+
+	private static ByteBuffer flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+		return buffer;
+	}
+
+	/*
+	 * Reading
+	 */
+
+	// Map a store written by write(), nothing but alpha and the movie ids is copied on the heap
+	public static MappedModelStore open(String filename){
+		MappedModelStore store = new MappedModelStore();
+		try {
+			RandomAccessFile file = new RandomAccessFile(new File(filename), "r");
+			FileChannel channel = file.getChannel();
+
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			if(header.getInt() != MAGIC || header.getInt() != VERSION)
+				throw new IllegalArgumentException(filename + " is not a model store");
+
+			store.entryBytes = header.getInt();
+			store.nbrTopics = header.getInt();
+			store.vocabSize = header.getInt();
+			store.nbrDocs = header.getInt();
+
+			long offset = HEADER_BYTES;
+			ByteBuffer alphaBuffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, 8L * store.nbrTopics).order(ByteOrder.LITTLE_ENDIAN);
+			store.alpha = new double[store.nbrTopics];
+			for(int k = 0; k < store.nbrTopics; k++)
+				store.alpha[k] = alphaBuffer.getDouble();
+			offset += 8L * store.nbrTopics;
+
+			store.beta = new Section(channel, offset, store.nbrTopics, store.vocabSize, store.entryBytes);
+			offset += (long) store.nbrTopics * store.vocabSize * store.entryBytes;
+
+			store.gamma = new Section(channel, offset, store.nbrDocs, store.nbrTopics, store.entryBytes);
+			offset += (long) store.nbrDocs * store.nbrTopics * store.entryBytes;
+
+			ByteBuffer movies = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L * store.nbrDocs).order(ByteOrder.LITTLE_ENDIAN);
+			store.movieToIndexMap = new HashMap<Integer, Integer>();
+			for(int d = 0; d < store.nbrDocs; d++)
+				store.movieToIndexMap.put(movies.getInt(), d);
+
+			// The mappings stay valid once the channel is closed
+			file.close();
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("Could not map model store " + filename, e);
+		}
+
+		System.out.format("Model store mapped from : %s\n", filename);
+		return store;
+	}
+
+	// Rows of equal size mapped in chunks of whole rows
+	private static class Section {
+		private MappedByteBuffer[] chunks;
+		private int rowsPerChunk;
+		private int cols;
+		private int entryBytes;
+
+		Section(FileChannel channel, long offset, int rows, int cols, int entryBytes) throws IOException {
+			this.cols = cols;
+			this.entryBytes = entryBytes;
+			long rowBytes = Math.max(1L, (long) cols * entryBytes);
+			this.rowsPerChunk = (int) Math.max(1, Math.min(rows, MAX_CHUNK_BYTES / rowBytes));
+
+			int nbrChunks = (rows + this.rowsPerChunk - 1) / this.rowsPerChunk;
+			this.chunks = new MappedByteBuffer[nbrChunks];
+			for(int c = 0; c < nbrChunks; c++){
+				int chunkRows = Math.min(this.rowsPerChunk, rows - c * this.rowsPerChunk);
+				this.chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+						offset + c * this.rowsPerChunk * rowBytes, chunkRows * rowBytes);
+				this.chunks[c].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+
+		// Absolute reads only, so concurrent readers never share a position
+		double get(int row, int col){
+			ByteBuffer chunk = this.chunks[row / this.rowsPerChunk];
+			int index = ((row % this.rowsPerChunk) * this.cols + col) * this.entryBytes;
+			return (this.entryBytes == 4) ? chunk.getFloat(index) : chunk.getDouble(index);
+		}
+
+		double[] getRow(int row){
+			double[] out = new double[this.cols];
+			for(int j = 0; j < this.cols; j++)
+				out[j] = this.get(row, j);
+			return out;
+		}
+	}
+
+	/*
+	 * Views for Model
+	 */
+
+	// Read-only RealMatrix over the mapped beta
+	public RealMatrix getBetaView(){
+		return new MappedMatrix(this.beta, this.nbrTopics, this.vocabSize);
+	}
+
+	// Read-only list over the mapped gamma, rows are copied to small vectors on access
+	public List<RealVector> getGammaView(){
+		return new AbstractList<RealVector>(){
+			public RealVector get(int doc){
+				return new ArrayRealVector(gamma.getRow(doc), false);
+			}
+
+			public int size(){
+				return nbrDocs;
+			}
+		};
+	}
+
+	private static class MappedMatrix extends AbstractRealMatrix {
+		private Section section;
+		private int rows, cols;
+
+		MappedMatrix(Section section, int rows, int cols){
+			super(rows, cols);
+			this.section = section;
+			this.rows = rows;
+			this.cols = cols;
+		}
+
+		public int getRowDimension(){
+			return this.rows;
+		}
+
+		public int getColumnDimension(){
+			return this.cols;
+		}
+
+		public double getEntry(int row, int column){
+			return this.section.get(row, column);
+		}
+
+		public double[] getRow(int row){
+			return this.section.getRow(row);
+		}
+
+		public void setEntry(int row, int column, double value){
+			throw new MathUnsupportedOperationException();
+		}
+
+		// Modifiable copies live on the heap
+		public RealMatrix createMatrix(int rowDimension, int columnDimension){
+			return new Array2DRowRealMatrix(rowDimension, columnDimension);
+		}
+
+		public RealMatrix copy(){
+			return new Array2DRowRealMatrix(this.getData(), false);
+		}
+	}
+
+	// getters
+	public int getNbrTopics(){
+		return this.nbrTopics;
+	}
+
+	public int getVocabSize(){
+		return this.vocabSize;
+	}
+
+	public int getNbrDocs(){
+		return this.nbrDocs;
+	}
+
+	public RealVector getAlpha(){
+		return new ArrayRealVector(this.alpha);
+	}
+
+	public double getBetaEntry(int topicId, int wordId){
+		return this.beta.get(topicId, wordId);
+	}
+
+	public double[] getGammaRow(int docIndex){
+		return this.gamma.getRow(docIndex);
+	}
+
+	// Gamma row of a wikipedia movie id, null if the movie is not in the store
+	public Integer getDocIndex(int wikiId){
+		return this.movieToIndexMap.get(wikiId);
+	}
+}
@@ -53,17 +53,21 @@ public class Model {
 	// the vocabulary learned from the corpus
 	private Vocabulary vocabulary;
 	
+	// beta, phi and gamma are stored as floats when set
+	private boolean singlePrecision;
+	
+	// memory-mapped store backing beta and gamma, null for models trained in this process
+	private MappedModelStore store;
+	
 
-	// initialize the model
-	public void initModel(Corpus c, Configs conf, Vocabulary vocab){
-		this.corpus = c;
+	// initialize alpha and beta only, with random values
+	// This is all a process that does not see the documents (e.g. a coordinator) needs
+	public void initParameters(Configs conf, Vocabulary vocab){
 		this.nbrTopics = conf.getNbrTopics();
 		this.wordsPerTopic = vocab.getVocabSize();
-		int nbrDocs = this.corpus.getNbrDocs();
 		this.vocabulary = vocab;
+		this.singlePrecision = conf.getSinglePrecision();
 		Utilities utils = new Utilities();
-		phi = new ArrayList<RealMatrix>();
-		gamma = new ArrayList<RealVector>();
 
 		// Random number generator with some seed
 		Random rand = new Random(10701);
@@ -80,7 +84,7 @@ public class Model {
 		
 		
 		// initialize beta
-		this.beta = new Array2DRowRealMatrix(this.nbrTopics, this.wordsPerTopic);
+		this.beta = this.newMatrix(this.nbrTopics, this.wordsPerTopic);
 		
 		double[] row;
 		// init the values of beta, by randomizing and normalizing over the rows
@@ -93,7 +97,19 @@ public class Model {
 			row = utils.normalize(row);
 			
 			beta.setRow(i, row);
-		}	
+		}
+	}
+	
+	// initialize the model
+	public void initModel(Corpus c, Configs conf, Vocabulary vocab){
+		this.corpus = c;
+		this.nbrTopics = conf.getNbrTopics();
+		this.wordsPerTopic = vocab.getVocabSize();
+		int nbrDocs = this.corpus.getNbrDocs();
+		this.vocabulary = vocab;
+		phi = new ArrayList<RealMatrix>();
+		gamma = new ArrayList<RealVector>();
+		this.initParameters(conf, vocab);
 		
 		//this.dumpAlphaToFile("data/debug/alpha.txt");
 		//this.dumpBetaToFile("data/debug/beta.txt");
@@ -108,10 +124,10 @@ public class Model {
 			int docSize = this.corpus.getDocs().get(i).getDocSize();
 			
 			// Initialize phi for each document
-			RealMatrix phiSingle = new Array2DRowRealMatrix(nbrTopics, docSize);
+			RealMatrix phiSingle = this.newMatrix(nbrTopics, docSize);
 			
 			// Initialize gamma for each document
-			RealVector gammaSingle = new ArrayRealVector(nbrTopics);
+			RealVector gammaSingle = this.singlePrecision ? new FloatVector(nbrTopics) : new ArrayRealVector(nbrTopics);
 		
 			this.phi.add(phiSingle);
 			this.gamma.add(gammaSingle);
@@ -122,67 +138,42 @@ public class Model {
 		//System.out.println("Size : " + entries * 8/(1024 * 1024));
 	}
 	
+	// initialize a read-only model backed by a memory-mapped store
+	// beta and gamma are views on the mapped file, there is no corpus and no phi
+	public void initFromStore(MappedModelStore modelStore, Vocabulary vocab){
+		if(modelStore.getVocabSize() != vocab.getVocabSize())
+			throw new IllegalArgumentException("Model store has " + modelStore.getVocabSize() 
+					+ " words, vocabulary has " + vocab.getVocabSize());
+		
+		this.store = modelStore;
+		this.corpus = null;
+		this.vocabulary = vocab;
+		this.nbrTopics = modelStore.getNbrTopics();
+		this.wordsPerTopic = modelStore.getVocabSize();
+		this.alpha = modelStore.getAlpha();
+		this.beta = modelStore.getBetaView();
+		this.gamma = modelStore.getGammaView();
+		this.phi = new ArrayList<RealMatrix>();
+	}
+	
 	// method to return the top K words from each topic
 	public List<List<String> > getTopicWords(int wordsPerTopic){
 		
+		TopWords top = this.getTopWords(wordsPerTopic, Runtime.getRuntime().availableProcessors());
+		
 		//List of top words for each topic;
 		List<List<String> > topWords = new ArrayList<List<String> >();
-		List<List<Double> > topWordVals = new ArrayList<List<Double> >();
-		
-		// Iterating over the words for each topic to get the top probability words
-		for(int topicId = 0 ; topicId < this.nbrTopics; topicId++){
-			// Checking for non-zero entries and extracting corresponding words
-			List<String> topicWords = new ArrayList<String>();
-			List<Double> topicWordVals = new ArrayList<Double>();
-			List<String> topicTopWords = new ArrayList<String>(); 
-			List<Double> topicTopWordVals = new ArrayList<Double>();
-			
-			// Iterating over beta for words
-			//System.out.println(this.vocabulary.getVocabSize());
-			for(int i = 0; i < this.vocabulary.getVocabSize(); i++){
-				if(this.beta.getEntry(topicId, i) > 0){
-					topicWords.add(this.vocabulary.getWordAtIndex(i));
-					topicWordVals.add(this.beta.getEntry(topicId, i));  
-				}	
-			}
-			
-			
-			//Get the top K elements using brute force
-			for(int iter = 0; iter < wordsPerTopic; iter++){
-				int topId = 0;
-				double topVal = topicWordVals.get(topId);
-				
-				for(int cur = 1; cur < topicWordVals.size(); cur++){
-					if(topVal < topicWordVals.get(cur)){
-						// Replace the top element 
-						topVal = topicWordVals.get(cur);
-						topId = cur;
-					}
-				}
-					
-				//Adding the current top word
-				topicTopWords.add(topicWords.get(topId));
-				topicTopWordVals.add(topicWordVals.get(topId));
-				
-				// Remove the particular topMember
-				topicWords.remove(topId);
-				topicWordVals.remove(topId);
-			}
-			
-			topWords.add(topicTopWords);
-			topWordVals.add(topicTopWordVals);
-		}
-
-		// Printing the top words
-		for(int i = 0; i < topWords.size(); i++){
-			System.out.println(topWords.get(i));
-			System.out.println(topWordVals.get(i));
-			//System.out.println("\n");
-		}
+		for(int topicId = 0 ; topicId < this.nbrTopics; topicId++)
+			topWords.add(top.getWords(topicId, this.vocabulary));
 		
 		return topWords;
 	}
 	
+	// method to return the indices and beta values of the top K words from each topic
+	public TopWords getTopWords(int wordsPerTopic, int nbrThreads){
+		return TopWords.extract(this.beta, wordsPerTopic, nbrThreads);
+	}
+	
 	// Method to dump model into a text file
 	public void dumpModeltoFile(String filename, String message){
 		File modelDump = new File(filename);
@@ -288,7 +279,7 @@ public class Model {
 		for(int i = 0; i < alpha.getDimension()-1; i++){
 			writer.print(alpha.getEntry(i) + " ");
 		}
-		writer.print(alpha.getEntry(alpha.getDimension()-1) + '\n');
+		writer.println(alpha.getEntry(alpha.getDimension()-1));
 		
 		System.out.format("Alpha dumped at : %s\n", filename);
 		
@@ -322,6 +313,116 @@ public class Model {
 		System.out.format("Beta dumped at : %s\n", filename);
 	}
 
+	// Method to dump gamma to a file, one document per line in corpus order
+	public void dumpGammaToFile(String filename){
+		File modelDump = new File(filename);
+		PrintWriter writer = null;
+		try {
+			writer = new PrintWriter(modelDump, "UTF-8");
+		} catch (FileNotFoundException e1) {
+			// TODO Auto-generated catch block
+			e1.printStackTrace();
+		} catch (UnsupportedEncodingException e1) {
+			// TODO Auto-generated catch block
+			e1.printStackTrace();
+		}
+		
+		//Gamma
+		for(int i = 0; i < gamma.size(); i++){
+			RealVector row = gamma.get(i);
+			for(int j = 0; j < row.getDimension()-1; j++){
+				writer.print(row.getEntry(j) + " ");
+			}
+			writer.println(row.getEntry(row.getDimension()-1));
+		}
+		
+		writer.close();
+		System.out.format("Gamma dumped at : %s\n", filename);
+	}
+	
+	// Method to save alpha, beta and gamma in their own files inside a directory
+	public void dumpToDirectory(String dirname, String message){
+		File dir = new File(dirname);
+		if(!dir.isDirectory() && !dir.mkdirs())
+			throw new IllegalArgumentException("Could not create model directory : " + dirname);
+		
+		this.dumpModeltoFile(new File(dir, "model.txt").getPath(), message);
+		this.dumpAlphaToFile(new File(dir, "alpha.txt").getPath());
+		this.dumpBetaToFile(new File(dir, "beta.txt").getPath());
+		this.dumpGammaToFile(new File(dir, "gamma.txt").getPath());
+		this.vocabulary.dumpToFile(new File(dir, "vocabulary.txt").getPath());
+	}
+	
+	// Method to read alpha dumped by dumpAlphaToFile
+	public void readAlphaFromFile(String filename){
+		double[][] rows = readRowsFromFile(filename);
+		if(rows.length != 1 || rows[0].length != this.nbrTopics)
+			throw new IllegalArgumentException("Alpha in " + filename + " does not have " + this.nbrTopics + " topics");
+		
+		this.alpha = new ArrayRealVector(rows[0], false);
+	}
+	
+	// Method to read beta dumped by dumpBetaToFile, the vocabulary must be the same
+	public void readBetaFromFile(String filename){
+		double[][] rows = readRowsFromFile(filename);
+		if(rows.length != this.nbrTopics || rows[0].length != this.wordsPerTopic)
+			throw new IllegalArgumentException("Beta in " + filename + " is not " + this.nbrTopics + " x " + this.wordsPerTopic);
+		
+		this.setBeta(new Array2DRowRealMatrix(rows, false));
+	}
+	
+	// Method to read gamma dumped by dumpGammaToFile, for the same corpus
+	public void readGammaFromFile(String filename){
+		double[][] rows = readRowsFromFile(filename);
+		if(rows.length != this.corpus.getNbrDocs())
+			throw new IllegalArgumentException("Gamma in " + filename + " is not for " + this.corpus.getNbrDocs() + " documents");
+		
+		for(int i = 0; i < rows.length; i++)
+			this.setGammaSingle(new ArrayRealVector(rows[i], false), i);
+	}
+	
+	// Reads a file of space separated doubles, one row per line
+	static double[][] readRowsFromFile(String filename){
+		List<double[]> rows = new ArrayList<double[]>();
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(new File(filename)));
+			String text = null;
+			while ((text = reader.readLine()) != null) {
+				if(text.trim().length() == 0)
+					continue;
+				
+				String[] subStrings = text.trim().split(" ");
+				double[] row = new double[subStrings.length];
+				for(int j = 0; j < row.length; j++)
+					row[j] = Double.parseDouble(subStrings[j]);
+				rows.add(row);
+			}
+			reader.close();
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("Could not read " + filename, e);
+		}
+		
+		return rows.toArray(new double[rows.size()][]);
+	}
+	
+	// Rough number of bytes held by a trained model for the given corpus and configs
+	// beta (and its normalization copy), phi for every word of every document and gamma
+	public static long estimateFootprint(Corpus c, Configs conf, Vocabulary vocab){
+		long nbrTopics = conf.getNbrTopics();
+		long nbrTokens = 0;
+		for(Document doc : c.getDocs())
+			nbrTokens += doc.getDocSize();
+		
+		long entries = 2 * nbrTopics * vocab.getVocabSize()
+				+ nbrTopics * nbrTokens
+				+ 2 * nbrTopics * c.getNbrDocs();
+		
+		// 4 bytes per float or 8 per double, plus the array headers of the row based matrices
+		long bytesPerEntry = conf.getSinglePrecision() ? 4 : 8;
+		return bytesPerEntry * entries + 16L * (nbrTopics * (c.getNbrDocs() + 1) + c.getNbrDocs());
+	}
+	
 	// Method to read dumped model from a text file
 	public void readModelFromFile(String modelPath){
 		File modelFile = new File(modelPath);
@@ -440,10 +541,11 @@ public class Model {
 		}
 		
 		// get the docIndex from the map
-		Integer docIndex = this.corpus.getMovieToIndexMap().get(wikiId);
+		Integer docIndex = (this.store != null) ? this.store.getDocIndex(wikiId) 
+				: this.corpus.getMovieToIndexMap().get(wikiId);
 		
 		// get the corresponding entry from gamma
-		if(!docIndex.equals(null))	estimate = this.gamma.get(docIndex).toArray();
+		if(docIndex != null)	estimate = this.gamma.get(docIndex).toArray();
 		
 		return estimate;
 	}
@@ -459,26 +561,51 @@ public class Model {
 	}
 
 	public void setBeta(RealMatrix b){
-		this.beta = b;
+		this.beta = this.store(b);
 	}
 	
 	public void setGamma(List<RealVector> g){
+		for(int i = 0; i < g.size(); i++)
+			g.set(i, this.store(g.get(i)));
 		this.gamma = g;
 	}
 	
 	public void setGammaSingle(RealVector g, int index){
-		this.gamma.set(index, g);
+		this.gamma.set(index, this.store(g));
 	}
 	
 	public void setPhi(List<RealMatrix> p){
+		for(int i = 0; i < p.size(); i++)
+			p.set(i, this.store(p.get(i)));
 		this.phi = p;
 	}
 	
 	public void setPhiSingle(RealMatrix p, int index){
-		this.phi.set(index, p);
+		this.phi.set(index, this.store(p));
+	}
+	
+	// Matrices and vectors in the storage precision of the model
+	private RealMatrix newMatrix(int rows, int cols){
+		return this.singlePrecision ? new FloatMatrix(rows, cols) : new Array2DRowRealMatrix(rows, cols);
+	}
+	
+	private RealMatrix store(RealMatrix m){
+		return (this.singlePrecision && !(m instanceof FloatMatrix)) ? new FloatMatrix(m) : m;
+	}
+	
+	private RealVector store(RealVector v){
+		return (this.singlePrecision && !(v instanceof FloatVector)) ? new FloatVector(v) : v;
 	}
 	
 	// getters
+	public Corpus getCorpus(){
+		return this.corpus;
+	}
+	
+	public Vocabulary getVocabulary(){
+		return this.vocabulary;
+	}
+	
 	public int getNbrTopics(){
 		return this.nbrTopics;
 	}
@@ -487,6 +614,10 @@ public class Model {
 		return this.wordsPerTopic;
 	}
 	
+	public boolean isSinglePrecision(){
+		return this.singlePrecision;
+	}
+	
 	public RealVector getAlpha(){
 		return this.alpha;
 	}
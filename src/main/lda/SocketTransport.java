@@ -0,0 +1,135 @@
+package main.lda;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/*
+ * TCP transport for distributed EM. The coordinator listens on a port and
+ * waits for all its workers, each worker connects and sends its id first.
+ * The parameters are serialized once per iteration and the same bytes are
+ * written to every worker.
+ */
+
+public class SocketTransport implements EMTransport {
+	
+	// Connections indexed by worker id, a single one on the worker side
+	private Socket[] sockets;
+	private DataInputStream[] inputs;
+	private DataOutputStream[] outputs;
+	
+	private boolean coordinator;
+	
+	private SocketTransport(int nbrConnections, boolean coordinator){
+		this.sockets = new Socket[nbrConnections];
+		this.inputs = new DataInputStream[nbrConnections];
+		this.outputs = new DataOutputStream[nbrConnections];
+		this.coordinator = coordinator;
+	}
+	
+	// Listen on port until the nbrWorkers workers are connected
+	public static SocketTransport coordinator(int port, int nbrWorkers) throws IOException {
+		SocketTransport transport = new SocketTransport(nbrWorkers, true);
+		ServerSocket server = new ServerSocket(port);
+		try {
+			System.out.format("Coordinator waiting for %d workers on port %d\n", nbrWorkers, server.getLocalPort());
+			for(int i = 0; i < nbrWorkers; i++){
+				Socket socket = server.accept();
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				int workerId = in.readInt();
+				if(workerId < 0 || workerId >= nbrWorkers || transport.sockets[workerId] != null)
+					throw new IOException("Unexpected worker id " + workerId);
+				
+				transport.sockets[workerId] = socket;
+				transport.inputs[workerId] = in;
+				transport.outputs[workerId] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				System.out.format("Worker %d connected from %s\n", workerId, socket.getRemoteSocketAddress());
+			}
+		}
+		finally {
+			server.close();
+		}
+		return transport;
+	}
+	
+	// Connect to the coordinator, retrying until it listens
+	public static SocketTransport worker(String host, int port, int workerId) throws IOException {
+		SocketTransport transport = new SocketTransport(1, false);
+		Socket socket = null;
+		for(int attempt = 0; socket == null; attempt++){
+			try {
+				socket = new Socket(host, port);
+			}
+			catch (IOException e) {
+				if(attempt >= 50)
+					throw e;
+				try {
+					Thread.sleep(200);
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while connecting to the coordinator", ie);
+				}
+			}
+		}
+		
+		transport.sockets[0] = socket;
+		transport.inputs[0] = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		transport.outputs[0] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		transport.outputs[0].writeInt(workerId);
+		transport.outputs[0].flush();
+		return transport;
+	}
+	
+	public void sendParameters(Parameters params) throws IOException {
+		this.checkRole(true);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		params.writeTo(new DataOutputStream(bytes));
+		for(DataOutputStream out : this.outputs){
+			bytes.writeTo(out);
+			out.flush();
+		}
+	}
+	
+	public SufficientStats[] receiveStats(int iteration) throws IOException {
+		this.checkRole(true);
+		SufficientStats[] stats = new SufficientStats[this.inputs.length];
+		for(int i = 0; i < this.inputs.length; i++){
+			int received = this.inputs[i].readInt();
+			if(received != iteration)
+				throw new IOException("Worker " + i + " sent statistics of iteration " + received + ", expected " + iteration);
+			stats[i] = SufficientStats.readFrom(this.inputs[i]);
+		}
+		return stats;
+	}
+	
+	public Parameters receiveParameters(int iteration) throws IOException {
+		this.checkRole(false);
+		Parameters params = Parameters.readFrom(this.inputs[0]);
+		if(params.iteration != iteration)
+			throw new IOException("Received parameters of iteration " + params.iteration + ", expected " + iteration);
+		return params;
+	}
+	
+	public void sendStats(int iteration, SufficientStats stats) throws IOException {
+		this.checkRole(false);
+		this.outputs[0].writeInt(iteration);
+		stats.writeTo(this.outputs[0]);
+	}
+	
+	public void close() throws IOException {
+		for(Socket socket : this.sockets)
+			if(socket != null)
+				socket.close();
+	}
+	
+	private void checkRole(boolean coordinatorCall){
+		if(coordinatorCall != this.coordinator)
+			throw new IllegalStateException("Transport opened as " + (this.coordinator ? "coordinator" : "worker"));
+	}
+}
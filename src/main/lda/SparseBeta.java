@@ -0,0 +1,229 @@
+package main.lda;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.commons.math3.exception.MathUnsupportedOperationException;
+import org.apache.commons.math3.linear.AbstractRealMatrix;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/*
+ * This class is a sparse, read-only copy of beta for export and serving.
+ * Most of the mass of a topic sits on a small part of the vocabulary, so
+ * every topic keeps only its largest entries, up to a share of its mass
+ * and above a threshold, in CSR arrays (word ids sorted within a topic).
+ * The mass left out is spread evenly over the other words of the topic as
+ * a smoothing floor, so every row still sums to one and no word gets a
+ * zero probability. It is a RealMatrix, so fold-in inference runs on it
+ * like on the dense beta (see InferenceBlock.foldIn).
+ *
+ * File layout (big endian, DataOutputStream) :
+ *   magic, nbrTopics, vocabSize, nbrEntries
+ *   rowStart : nbrTopics + 1 ints
+ *   floor    : nbrTopics doubles
+ *   wordIds  : nbrEntries ints
+ *   values   : nbrEntries floats
+ */
+
+public class SparseBeta extends AbstractRealMatrix {
+	
+	private static final int MAGIC = 0x4C444153;	// "LDAS"
+	
+	private int nbrTopics;
+	private int vocabSize;
+	
+	// Entries of topic k are wordIds / values [rowStart[k], rowStart[k + 1])
+	private int[] rowStart;
+	private int[] wordIds;
+	private float[] values;
+	
+	// Value of every word that is not kept, per topic
+	private double[] floor;
+	
+	private SparseBeta(int nbrTopics, int vocabSize){
+		super(nbrTopics, vocabSize);
+		this.nbrTopics = nbrTopics;
+		this.vocabSize = vocabSize;
+	}
+	
+	// Keep, per topic, the largest entries until they cover mass of the topic (e.g. 0.9)
+	// Entries below threshold are never kept (0 to disable)
+	public static SparseBeta fromBeta(RealMatrix beta, double mass, double threshold){
+		int nbrTopics = beta.getRowDimension();
+		int vocabSize = beta.getColumnDimension();
+		SparseBeta sparse = new SparseBeta(nbrTopics, vocabSize);
+		sparse.rowStart = new int[nbrTopics + 1];
+		sparse.floor = new double[nbrTopics];
+		
+		int[][] rowIds = new int[nbrTopics][];
+		float[][] rowValues = new float[nbrTopics][];
+		for(int k = 0; k < nbrTopics; k++){
+			final double[] row = beta.getRow(k);
+			double total = 0;
+			for(double val : row)
+				total += val;
+			
+			// Words by decreasing beta, ties by word id
+			Integer[] order = new Integer[vocabSize];
+			for(int w = 0; w < vocabSize; w++)
+				order[w] = w;
+			Arrays.sort(order, new Comparator<Integer>(){
+				public int compare(Integer a, Integer b){
+					if(row[a] != row[b])
+						return (row[a] > row[b]) ? -1 : 1;
+					return a.compareTo(b);
+				}
+			});
+			
+			int kept = 0;
+			double keptMass = 0;
+			while(kept < vocabSize && keptMass < mass * total && row[order[kept]] > 0 && row[order[kept]] >= threshold){
+				keptMass += row[order[kept]];
+				kept++;
+			}
+			
+			// CSR rows are sorted by word id for the lookups
+			int[] ids = new int[kept];
+			for(int i = 0; i < kept; i++)
+				ids[i] = order[i];
+			Arrays.sort(ids);
+			float[] vals = new float[kept];
+			for(int i = 0; i < kept; i++)
+				vals[i] = (float) (row[ids[i]] / total);
+			
+			rowIds[k] = ids;
+			rowValues[k] = vals;
+			sparse.rowStart[k + 1] = sparse.rowStart[k] + kept;
+			sparse.floor[k] = (kept < vocabSize) ? Math.max(0, 1 - keptMass / total) / (vocabSize - kept) : 0;
+		}
+		
+		sparse.wordIds = new int[sparse.rowStart[nbrTopics]];
+		sparse.values = new float[sparse.rowStart[nbrTopics]];
+		for(int k = 0; k < nbrTopics; k++){
+			System.arraycopy(rowIds[k], 0, sparse.wordIds, sparse.rowStart[k], rowIds[k].length);
+			System.arraycopy(rowValues[k], 0, sparse.values, sparse.rowStart[k], rowValues[k].length);
+		}
+		
+		System.out.format("Sparse beta keeps %d of %d entries (%.2f%%)\n", sparse.getNbrEntries(),
+				(long) nbrTopics * vocabSize, 100.0 * sparse.getNbrEntries() / ((double) nbrTopics * vocabSize));
+		return sparse;
+	}
+	
+	/*
+	 * Files
+	 */
+	
+	public void write(String filename){
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(filename))));
+			out.writeInt(MAGIC);
+			out.writeInt(this.nbrTopics);
+			out.writeInt(this.vocabSize);
+			out.writeInt(this.wordIds.length);
+			for(int start : this.rowStart)
+				out.writeInt(start);
+			for(double val : this.floor)
+				out.writeDouble(val);
+			for(int id : this.wordIds)
+				out.writeInt(id);
+			for(float val : this.values)
+				out.writeFloat(val);
+			out.close();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Could not write sparse beta " + filename, e);
+		}
+		System.out.format("Sparse beta written at : %s\n", filename);
+	}
+	
+	public static SparseBeta read(String filename){
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(filename))));
+			if(in.readInt() != MAGIC){
+				in.close();
+				throw new IllegalArgumentException(filename + " is not a sparse beta");
+			}
+			
+			SparseBeta sparse = new SparseBeta(in.readInt(), in.readInt());
+			int nbrEntries = in.readInt();
+			sparse.rowStart = new int[sparse.nbrTopics + 1];
+			for(int k = 0; k <= sparse.nbrTopics; k++)
+				sparse.rowStart[k] = in.readInt();
+			sparse.floor = new double[sparse.nbrTopics];
+			for(int k = 0; k < sparse.nbrTopics; k++)
+				sparse.floor[k] = in.readDouble();
+			sparse.wordIds = new int[nbrEntries];
+			for(int i = 0; i < nbrEntries; i++)
+				sparse.wordIds[i] = in.readInt();
+			sparse.values = new float[nbrEntries];
+			for(int i = 0; i < nbrEntries; i++)
+				sparse.values[i] = in.readFloat();
+			in.close();
+			return sparse;
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("Could not read sparse beta " + filename, e);
+		}
+	}
+	
+	/*
+	 * RealMatrix, read-only
+	 */
+	
+	public int getRowDimension(){
+		return this.nbrTopics;
+	}
+	
+	public int getColumnDimension(){
+		return this.vocabSize;
+	}
+	
+	public double getEntry(int row, int column){
+		int pos = Arrays.binarySearch(this.wordIds, this.rowStart[row], this.rowStart[row + 1], column);
+		return (pos >= 0) ? this.values[pos] : this.floor[row];
+	}
+	
+	public double[] getRow(int row){
+		double[] out = new double[this.vocabSize];
+		Arrays.fill(out, this.floor[row]);
+		for(int i = this.rowStart[row]; i < this.rowStart[row + 1]; i++)
+			out[this.wordIds[i]] = this.values[i];
+		return out;
+	}
+	
+	public void setEntry(int row, int column, double value){
+		throw new MathUnsupportedOperationException();
+	}
+	
+	// Modifiable copies are dense
+	public RealMatrix createMatrix(int rowDimension, int columnDimension){
+		return new Array2DRowRealMatrix(rowDimension, columnDimension);
+	}
+	
+	public RealMatrix copy(){
+		return new Array2DRowRealMatrix(this.getData(), false);
+	}
+	
+	// getters
+	public int getNbrEntries(){
+		return this.wordIds.length;
+	}
+	
+	public double getFloor(int topicId){
+		return this.floor[topicId];
+	}
+	
+	// Size of the arrays, in bytes
+	public long getSizeBytes(){
+		return 4L * this.rowStart.length + 8L * this.floor.length + 8L * this.wordIds.length;
+	}
+}
@@ -0,0 +1,93 @@
+package main.lda;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/*
+ * This class holds the sufficient statistics of the M-step for a set of
+ * documents : the expected word counts of every topic (sum of phi), the
+ * K-vector of gamma statistics used by Newton-Raphson for alpha, and the
+ * number of documents. Statistics of disjoint shards of the corpus add up
+ * to those of the whole corpus, which is what a worker ships to the
+ * coordinator in distributed EM instead of its phi and gamma.
+ */
+
+public class SufficientStats {
+	
+	// beta[topic][word] : expected count of word in topic
+	private double[][] beta;
+	
+	// alpha[topic] : sum_d (digamma(gamma_dk) - digamma(sum_j gamma_dj))
+	private double[] alpha;
+	
+	private int nbrDocs;
+	
+	// constructor, empty statistics
+	public SufficientStats(int nbrTopics, int vocabSize){
+		this.beta = new double[nbrTopics][vocabSize];
+		this.alpha = new double[nbrTopics];
+		this.nbrDocs = 0;
+	}
+	
+	// Add the statistics of another set of documents
+	public void add(SufficientStats other){
+		if(other.beta.length != this.beta.length || other.beta[0].length != this.beta[0].length)
+			throw new IllegalArgumentException("Sufficient statistics of different dimensions can not be added");
+		
+		for(int k = 0; k < this.beta.length; k++){
+			for(int w = 0; w < this.beta[k].length; w++)
+				this.beta[k][w] += other.beta[k][w];
+			this.alpha[k] += other.alpha[k];
+		}
+		this.nbrDocs += other.nbrDocs;
+	}
+	
+	// Binary form : nbrTopics, vocabSize, nbrDocs, alpha then beta row by row
+	public void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(this.beta.length);
+		out.writeInt(this.beta[0].length);
+		out.writeInt(this.nbrDocs);
+		for(double val : this.alpha)
+			out.writeDouble(val);
+		for(double[] row : this.beta)
+			for(double val : row)
+				out.writeDouble(val);
+		out.flush();
+	}
+	
+	public static SufficientStats readFrom(DataInputStream in) throws IOException {
+		int nbrTopics = in.readInt();
+		int vocabSize = in.readInt();
+		SufficientStats stats = new SufficientStats(nbrTopics, vocabSize);
+		stats.nbrDocs = in.readInt();
+		for(int k = 0; k < nbrTopics; k++)
+			stats.alpha[k] = in.readDouble();
+		for(int k = 0; k < nbrTopics; k++)
+			for(int w = 0; w < vocabSize; w++)
+				stats.beta[k][w] = in.readDouble();
+		return stats;
+	}
+	
+	// getters
+	public double[][] getBeta(){
+		return this.beta;
+	}
+	
+	public double[] getAlpha(){
+		return this.alpha;
+	}
+	
+	public int getNbrDocs(){
+		return this.nbrDocs;
+	}
+	
+	// setters
+	public void setAlpha(double[] a){
+		this.alpha = a;
+	}
+	
+	public void setNbrDocs(int n){
+		this.nbrDocs = n;
+	}
+}
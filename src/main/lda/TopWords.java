@@ -0,0 +1,144 @@
+package main.lda;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math3.linear.RealMatrix;
+
+/*
+ * This class holds the top words of every topic, as vocabulary indices and
+ * their beta values sorted in decreasing order. Each topic is scanned once
+ * with a bounded min-heap of size k, so extraction is O(V log k) per topic
+ * and the topics are split over several threads.
+ */
+
+public class TopWords {
+
+	// wordIds[topic][rank] is the vocabulary index of the rank-th top word
+	private int[][] wordIds;
+
+	// values[topic][rank] is the corresponding entry of beta
+	private double[][] values;
+
+	private TopWords(int nbrTopics){
+		this.wordIds = new int[nbrTopics][];
+		this.values = new double[nbrTopics][];
+	}
+
+	// Extract the top k positive entries of every row of beta
+	public static TopWords extract(final RealMatrix beta, final int wordsPerTopic, int nbrThreads){
+		final TopWords top = new TopWords(beta.getRowDimension());
+
+		new Utilities().parallelChunks(beta.getRowDimension(), nbrThreads, new Utilities.ChunkTask(){
+			public void run(int chunk, int start, int end){
+				for(int topicId = start; topicId < end; topicId++)
+					top.extractRow(topicId, beta.getRow(topicId), wordsPerTopic);
+			}
+		});
+
+		return top;
+	}
+
+	// Bounded min-heap over one row, the root is the smallest of the current top k
+	private void extractRow(int topicId, double[] row, int k){
+		k = Math.min(k, row.length);
+		int[] heapIds = new int[k];
+		double[] heapVals = new double[k];
+		int size = 0;
+
+		for(int w = 0; w < row.length; w++){
+			double val = row[w];
+			// Only words that actually have mass in the topic
+			if(!(val > 0))
+				continue;
+
+			if(size < k){
+				heapIds[size] = w;
+				heapVals[size] = val;
+				siftUp(heapIds, heapVals, size);
+				size++;
+			}
+			else if(k > 0 && val > heapVals[0]){
+				heapIds[0] = w;
+				heapVals[0] = val;
+				siftDown(heapIds, heapVals, 0, size);
+			}
+		}
+
+		// Popping the heap gives increasing order, fill the result from the back
+		int[] ids = new int[size];
+		double[] vals = new double[size];
+		for(int i = size - 1; i >= 0; i--){
+			ids[i] = heapIds[0];
+			vals[i] = heapVals[0];
+			heapIds[0] = heapIds[i];
+			heapVals[0] = heapVals[i];
+			siftDown(heapIds, heapVals, 0, i);
+		}
+
+		this.wordIds[topicId] = ids;
+		this.values[topicId] = vals;
+	}
+
+	// Heap order : smaller value first, ties broken by larger word index so lower indices are kept
+	private static boolean less(int[] ids, double[] vals, int a, int b){
+		if(vals[a] != vals[b])
+			return vals[a] < vals[b];
+		return ids[a] > ids[b];
+	}
+
+	private static void swap(int[] ids, double[] vals, int a, int b){
+		int id = ids[a];
+		ids[a] = ids[b];
+		ids[b] = id;
+		double val = vals[a];
+		vals[a] = vals[b];
+		vals[b] = val;
+	}
+
+	private static void siftUp(int[] ids, double[] vals, int pos){
+		while(pos > 0){
+			int parent = (pos - 1) / 2;
+			if(!less(ids, vals, pos, parent))
+				break;
+			swap(ids, vals, pos, parent);
+			pos = parent;
+		}
+	}
+
+	private static void siftDown(int[] ids, double[] vals, int pos, int size){
+		while(true){
+			int smallest = pos;
+			int left = 2 * pos + 1, right = left + 1;
+			if(left < size && less(ids, vals, left, smallest))
+				smallest = left;
+			if(right < size && less(ids, vals, right, smallest))
+				smallest = right;
+			if(smallest == pos)
+				return;
+			swap(ids, vals, pos, smallest);
+			pos = smallest;
+		}
+	}
+
+	// getters
+	public int getNbrTopics(){
+		return this.wordIds.length;
+	}
+
+	public int[] getWordIds(int topicId){
+		return this.wordIds[topicId];
+	}
+
+	public double[] getValues(int topicId){
+		return this.values[topicId];
+	}
+
+	// The top words of a topic as strings, given the vocabulary
+	public List<String> getWords(int topicId, Vocabulary vocab){
+		List<String> words = new ArrayList<String>(this.wordIds[topicId].length);
+		for(int wordId : this.wordIds[topicId])
+			words.add(vocab.getWordAtIndex(wordId));
+		return words;
+	}
+}
@@ -1,9 +1,14 @@
 package main.lda;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 
+import org.apache.commons.math3.linear.RealVector;
+
 /*
  * This is the main module that models the corpus, using variational
  * EM. This class provides the API that the CTR model interacts with.
@@ -37,33 +42,36 @@ public class TopicModeler {
 		Model model = new Model();
 		model.initModel(corpus, conf, vocab);
 		
+		// Resume from the latest checkpoint, or start from an older model
+		int iters = 0;
+		Checkpoint checkpoint = null;
+		if(conf.getCheckpointDir() != null){
+			checkpoint = new Checkpoint(conf.getCheckpointDir());
+			if(conf.getResume())
+				iters = checkpoint.restore(model);
+		}
+		if(iters == 0 && conf.getWarmStartDir() != null)
+			Checkpoint.warmStart(model, conf.getWarmStartDir());
+		
 		// Do the E-M algorithm
 		double prevLikelihood = 0;
 		double likelihood = 0;
 		double convergence = 1;
 		double emConv = conf.getEmConvergence();
-		int iters = 0;
 		int maxIters = conf.getEmIters();
 		int nDocs = corpus.getNbrDocs();
-		InferenceBlock infBlock = new InferenceBlock();
 		EstimatorBlock estBlock = new EstimatorBlock();
-		List<Document> docs = corpus.getDocs();
+		
+		// Residual of every document, unknown (infinite) until it is first processed
+		double[] residuals = new double[nDocs];
+		Arrays.fill(residuals, Double.POSITIVE_INFINITY);
 		
 		while((iters < maxIters) && (convergence > emConv)){
 			System.out.println("Running iteration " + iters);
 			// E-step for each document
 			// update the variational parameters in the model
 			likelihood = 0;
-			System.out.println("Running inference on documents...");
-	
-			// Runs for all the documens (runs wihtout error)
-			for(int i = 0; i<nDocs; i++){
-				if(i%100 == 0) 
-					System.out.format("Running inference on document : %d\n", i);
-				
-				infBlock.inferDocument(docs.get(i), model, conf);
-				//likelihood += infBlock.infer(docs.get(i), model, conf);	
-			}
+			this.expectationStep(corpus, model, conf, residuals, iters);
 			
 			//model.dumpLogFile("/Users/skottur/Downloads/lda-0.2-matlab/inferenceInter.txt", "First iteration dumping");
 			//System.out.format("Likelihood : %f \n\nRunning estimation!\n" , likelihood);
@@ -78,11 +86,81 @@ public class TopicModeler {
 			//convergence = Math.abs((likelihood - prevLikelihood) / prevLikelihood); 
 			//prevLikelihood = likelihood;
 			iters++;
+			
+			if(checkpoint != null && (iters % conf.getCheckpointInterval() == 0 || iters == maxIters))
+				checkpoint.save(model, iters);
 		}
 		
 		return model;
 	}
 	
+	// E-step : variational inference on the scheduled documents of the corpus
+	// residuals holds the gamma change of every document and is updated in place
+	public void expectationStep(Corpus corpus, final Model model, final Configs conf, final double[] residuals, int iteration){
+		final InferenceBlock infBlock = new InferenceBlock();
+		final List<Document> docs = corpus.getDocs();
+		Utilities utils = new Utilities();
+		
+		System.out.println("Running inference on documents...");
+		
+		// Documents are independent given alpha and beta, split them over the threads
+		final int[] schedule = this.scheduleDocuments(residuals, iteration, conf);
+		System.out.format("Running inference on %d of %d documents\n", schedule.length, corpus.getNbrDocs());
+		utils.parallelChunks(schedule.length, conf.getNbrThreads(), new Utilities.ChunkTask(){
+			public void run(int chunk, int start, int end){
+				for(int i = start; i < end; i++){
+					if(i%100 == 0) 
+						System.out.format("Running inference on document : %d\n", i);
+					
+					Document doc = docs.get(schedule[i]);
+					RealVector prevGamma = model.getGamma().get(doc.getDocId());
+					infBlock.inferDocument(doc, model, conf);
+					
+					// Change of gamma per word, drives the schedule of the next iterations
+					RealVector gamma = model.getGamma().get(doc.getDocId());
+					residuals[doc.getDocId()] = gamma.getL1Distance(prevGamma) / Math.max(1, doc.getDocSize());
+				}
+			}
+		});
+	}
+	
+	// Documents to run inference on in this E-step, by decreasing residual
+	// Without residual scheduling, and on full sweeps, this is every document
+	private int[] scheduleDocuments(final double[] residuals, int iteration, Configs conf){
+		int nDocs = residuals.length;
+		boolean fullSweep = !conf.getResidualScheduling() || (iteration % conf.getFullSweepInterval() == 0);
+		
+		List<Integer> scheduled = new ArrayList<Integer>();
+		for(int d = 0; d < nDocs; d++){
+			// Correctness guard : documents never processed are always scheduled
+			if(fullSweep || residuals[d] >= conf.getResidualThreshold())
+				scheduled.add(d);
+		}
+		
+		if(!fullSweep){
+			Collections.sort(scheduled, new Comparator<Integer>(){
+				public int compare(Integer a, Integer b){
+					return Double.compare(residuals[b], residuals[a]);
+				}
+			});
+			
+			// Cap on the share of the corpus revisited, keeping the largest residuals
+			// Documents never processed (infinite residual, e.g. after a resume) are sorted
+			// first and never cut, their phi is still the zeros of initModel
+			int neverProcessed = 0;
+			while(neverProcessed < scheduled.size() && residuals[scheduled.get(neverProcessed)] == Double.POSITIVE_INFINITY)
+				neverProcessed++;
+			int cap = Math.max(neverProcessed, (int) Math.ceil(conf.getMaxScheduledFraction() * nDocs));
+			if(scheduled.size() > cap)
+				scheduled = scheduled.subList(0, cap);
+		}
+		
+		int[] schedule = new int[scheduled.size()];
+		for(int i = 0; i < schedule.length; i++)
+			schedule[i] = scheduled.get(i);
+		return schedule;
+	}
+	
 	// Return the performance metrics
 	public Metrics getMetrics(){
 		
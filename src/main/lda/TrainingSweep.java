@@ -0,0 +1,152 @@
+package main.lda;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * This class trains several configurations (e.g. different number of topics)
+ * on the same corpus. The corpus and vocabulary are parsed once and shared by
+ * all the runs, which go in parallel as long as the sum of their threads and
+ * of their estimated model footprints stays within the global budgets.
+ * Every trained model is written to its own directory under the output root.
+ */
+
+public class TrainingSweep {
+
+	// Shared, read-only inputs of every run
+	private Corpus corpus;
+	private Vocabulary vocabulary;
+
+	// Global budgets over all the runs in flight
+	private int threadBudget;
+	private long memoryBudget;
+
+	// Currently available share of the budgets, guarded by this
+	private int freeThreads;
+	private long freeMemory;
+
+	// The runs of the sweep, labels name the output directories
+	private List<String> labels;
+	private List<Configs> configs;
+
+	// constructor, memoryBudget is in bytes
+	public TrainingSweep(Corpus c, Vocabulary vocab, int threadBudget, long memoryBudget){
+		this.corpus = c;
+		this.vocabulary = vocab;
+		this.threadBudget = Math.max(1, threadBudget);
+		this.memoryBudget = memoryBudget;
+		this.freeThreads = this.threadBudget;
+		this.freeMemory = memoryBudget;
+		this.labels = new ArrayList<String>();
+		this.configs = new ArrayList<Configs>();
+	}
+
+	// Add a run to the sweep, its directory is named after the number of topics
+	public void addConfig(Configs conf){
+		this.addConfig(String.valueOf(conf.getNbrTopics()), conf);
+	}
+
+	public void addConfig(String label, Configs conf){
+		if(this.labels.contains(label))
+			throw new IllegalArgumentException("Duplicate label in sweep : " + label);
+
+		this.labels.add(label);
+		this.configs.add(conf);
+	}
+
+	// Train all the configurations and dump each model to outputRoot/label
+	// Returns the directories of the runs that completed
+	public List<String> run(String outputRoot){
+		final File root = new File(outputRoot);
+		List<String> written = new ArrayList<String>();
+		List<Future<String>> results = new ArrayList<Future<String>>();
+
+		// One waiting slot per run, the budgets decide how many actually train at once
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, this.configs.size()));
+		try {
+			for(int i = 0; i < this.configs.size(); i++){
+				final String label = this.labels.get(i);
+				final Configs conf = this.configs.get(i);
+				results.add(pool.submit(new Callable<String>(){
+					public String call(){
+						return trainOne(label, conf, new File(root, label));
+					}
+				}));
+			}
+
+			for(int i = 0; i < results.size(); i++){
+				try {
+					String dir = results.get(i).get();
+					if(dir != null)
+						written.add(dir);
+				}
+				catch (ExecutionException e) {
+					System.out.println("Sweep run " + this.labels.get(i) + " failed : " + e.getCause());
+					e.getCause().printStackTrace();
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			pool.shutdownNow();
+		}
+
+		return written;
+	}
+
+	// Train one configuration once its share of the budgets is available
+	private String trainOne(String label, Configs conf, File dir){
+		long footprint = Model.estimateFootprint(this.corpus, conf, this.vocabulary);
+		if(footprint > this.memoryBudget){
+			System.out.format("Skipping sweep run %s : needs %d MB, budget is %d MB\n",
+					label, footprint >> 20, this.memoryBudget >> 20);
+			return null;
+		}
+
+		// A single run can not use more threads than the whole sweep
+		int threads = Math.min(conf.getNbrThreads(), this.threadBudget);
+		conf.setNbrThreads(threads);
+
+		try {
+			this.acquire(threads, footprint);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+
+		try {
+			System.out.format("Starting sweep run %s with %d threads\n", label, threads);
+			TopicModeler tm = new TopicModeler();
+			Model model = tm.modelCorpus(this.corpus, conf, this.vocabulary);
+			model.dumpToDirectory(dir.getPath(), "Sweep run " + label);
+			return dir.getPath();
+		}
+		finally {
+			this.release(threads, footprint);
+		}
+	}
+
+	// Wait until both the threads and the memory of a run fit in what is left
+	private synchronized void acquire(int threads, long footprint) throws InterruptedException {
+		while(this.freeThreads < threads || this.freeMemory < footprint)
+			this.wait();
+
+		this.freeThreads -= threads;
+		this.freeMemory -= footprint;
+	}
+
+	private synchronized void release(int threads, long footprint){
+		this.freeThreads += threads;
+		this.freeMemory += footprint;
+		this.notifyAll();
+	}
+}
@@ -2,6 +2,10 @@ package main.lda;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealMatrix;
@@ -17,6 +21,9 @@ import org.la4j.vector.Vector;
  */
 
 public class Utilities {
+	// Smallest fraction of a Newton step tried before giving up on backtracking
+	private static final double MIN_NR_STEP = 1e-10;
+	
 	// Evaluate the stationary point of a function using Newton-Raphson method,
 	// assuming the form of the likelihood function is known (thus, it is not general)
 	// In LDA, this is used to maximize the lower bound of log L, (i.e. function is known)
@@ -38,65 +45,130 @@ public class Utilities {
 			e.printStackTrace();
 		}
 		
+		// gamma only enters the objective through this K-vector, reduce it once
+		RealVector suffStats = this.computeAlphaSuffStats(gamma, configs.getNbrThreads());
+		
+		return this.performNR(configs, initAlpha, suffStats, gamma.size());
+	}
+	
+	// Newton-Raphson on the alpha independent sufficient statistics
+	// suffStats_k = sum_d (digamma(gamma_dk) - digamma(sum_j gamma_dj)), so every iteration is O(K)
+	// Steps that leave the positive orthant or decrease the bound are halved (backtracking)
+	public RealVector performNR(Configs configs, RealVector initAlpha, RealVector suffStats, int noDocuments){
+		
 		// declarations of running variables
-		double hessianConst;
+		double hessianConst, stepSize, bound, newBound;
 		
-		//New alpha
-		//RealVector newAlpha = new ArrayRealVector(initAlpha.getDimension(), 2.0);
-		RealVector newAlpha = initAlpha;
+		RealVector newAlpha = initAlpha.copy();
 		// Holder objects for the variables used in the algorithm 
-		RealVector gradient, hessianDiag, alphaIncrement;
+		RealVector gradient, hessianDiag, alphaIncrement, trialAlpha;
+		
+		bound = this.alphaBound(newAlpha, suffStats, noDocuments);
 		
 		// Limiting the number of iterations
 		for(int i = 0; i < configs.getMaxNRIterations(); i++){
 			// Obtaining the gradient 
-			gradient = this.computeGradient(newAlpha, gamma);
-
-			//gradient = this.normalizeL2(gradient);
+			gradient = this.computeGradient(newAlpha, suffStats, noDocuments);
 			
 			// Obtaining the Hessian diagonal
-			hessianDiag = this.computeHessianDiag(newAlpha, gamma.size());
+			hessianDiag = this.computeHessianDiag(newAlpha, noDocuments);
 			
 			// Obtaining the Hessian constant
-			hessianConst = this.computeHessianConstant(newAlpha);
+			hessianConst = this.computeHessianConstant(newAlpha, noDocuments);
 			
 			// Obtaining the increment in alpha
 			alphaIncrement = this.computeNRStep(hessianDiag, hessianConst, gradient);
 			
-			// Checking if increment is within the threshold, exist if yes
-			if(alphaIncrement.getNorm()/initAlpha.getNorm() < configs.getAlphaChangeThreshold()){
-				System.out.println("NR iterations converged after " + i + " steps!");
-				break;
+			// Damping the step until alpha stays positive and the bound does not decrease
+			stepSize = 1.0;
+			trialAlpha = newAlpha.subtract(alphaIncrement);
+			newBound = this.alphaBound(trialAlpha, suffStats, noDocuments);
+			while(stepSize > MIN_NR_STEP && 
+					(!this.isPositive(trialAlpha) || Double.isNaN(newBound) || newBound < bound)){
+				stepSize *= 0.5;
+				trialAlpha = newAlpha.subtract(alphaIncrement.mapMultiply(stepSize));
+				newBound = this.isPositive(trialAlpha) ? 
+						this.alphaBound(trialAlpha, suffStats, noDocuments) : Double.NaN;
 			}
 			
-			// Updating alpha
-			newAlpha = newAlpha.subtract(alphaIncrement);
-			
-			//Checking if any of the values of updated values of alpha is negative, if yes retry with smaller alpha init
-			for(int j = 0; j < newAlpha.getDimension(); j++){
-				if(newAlpha.getEntry(j) < 0){
-					// Re-try with smaller value of initAlpha
-					System.out.println("Using a smaller initial estimate for alpha\n\n");
-					return performNR(configs, initAlpha.mapMultiply(10.0), gamma);
-				}
+			// No acceptable step left, we are as close to the optimum as we can get
+			if(stepSize <= MIN_NR_STEP){
+				System.out.println("NR iterations stopped after " + i + " steps, no ascent direction!");
+				return newAlpha;
 			}
 			
-			// Debug messages
-			//System.out.println("Mag: " + gradient.getNorm() + " " + gradient);
-			//System.out.println("Gradient Magnitude:" + gradient.getNorm() + " " + gamma.size());
-			//System.out.println("Diagonal : " + hessianDiag);
-			//System.out.format("Hessian diagonal norm: %f\n", hessianDiag.getNorm());
-			//System.out.println("Constant : " + hessianDiag);
-			//System.out.format("Hessian constant norm: %f\n", hessianConst);
-			//System.out.println("Increment : " + alphaIncrement + "\n");
-			//System.out.println("Increment magnitude: " + alphaIncrement.getNorm());
-			//System.out.println(newAlpha);
+			alphaIncrement = alphaIncrement.mapMultiply(stepSize);
+			newAlpha = trialAlpha;
+			bound = newBound;
+			
+			// Checking if increment is within the threshold, exist if yes
+			if(alphaIncrement.getNorm()/newAlpha.getNorm() < configs.getAlphaChangeThreshold()){
+				System.out.println("NR iterations converged after " + i + " steps!");
+				return newAlpha;
 			}
+		}
 
 		System.out.println("NR iterations completed or exhausted");
 		return newAlpha;
 	}
 	
+	// Alpha dependent part of the lower bound, used to accept or reject damped NR steps
+	// L(alpha) = M (logGamma(sum alpha) - sum logGamma(alpha_k)) + sum (alpha_k - 1) suffStats_k
+	public double alphaBound(RealVector alpha, RealVector suffStats, int noDocuments){
+		double alphaSum = 0, logGammaSum = 0, statTerm = 0;
+		for(int k = 0; k < alpha.getDimension(); k++){
+			alphaSum += alpha.getEntry(k);
+			logGammaSum += this.logGamma(alpha.getEntry(k));
+			statTerm += (alpha.getEntry(k) - 1) * suffStats.getEntry(k);
+		}
+		
+		return noDocuments * (this.logGamma(alphaSum) - logGammaSum) + statTerm;
+	}
+	
+	// Reduce gamma of all the documents to the alpha independent K-vector used by NR
+	// Documents are split in contiguous chunks, each thread accumulates its own partial sum
+	public RealVector computeAlphaSuffStats(final List<RealVector> gamma, int nbrThreads){
+		final int noDocuments = gamma.size();
+		if(noDocuments == 0)
+			throw new IllegalArgumentException("Need at least one document to compute alpha statistics");
+		
+		final int noTopics = gamma.get(0).getDimension();
+		final double[][] partials = new double[Math.max(1, Math.min(nbrThreads, noDocuments))][];
+		
+		this.parallelChunks(noDocuments, partials.length, new ChunkTask(){
+			public void run(int chunk, int start, int end){
+				double[] partial = new double[noTopics];
+				for(int d = start; d < end; d++){
+					RealVector docGamma = gamma.get(d);
+					double gammaSum = 0;
+					for(int k = 0; k < noTopics; k++)
+						gammaSum += docGamma.getEntry(k);
+					
+					double diGammaSum = diGamma(gammaSum);
+					for(int k = 0; k < noTopics; k++)
+						partial[k] += diGamma(docGamma.getEntry(k)) - diGammaSum;
+				}
+				partials[chunk] = partial;
+			}
+		});
+		
+		// Combining the partial sums in chunk order, so the result does not depend on scheduling
+		double[] suffStats = new double[noTopics];
+		for(double[] partial : partials)
+			for(int k = 0; k < noTopics; k++)
+				suffStats[k] += partial[k];
+		
+		return new ArrayRealVector(suffStats, false);
+	}
+	
+	// Checks that every entry of a vector is strictly positive
+	private boolean isPositive(RealVector input){
+		for(int i = 0; i < input.getDimension(); i++)
+			if(!(input.getEntry(i) > 0))
+				return false;
+		return true;
+	}
+	
 	// Newton Raphson implemented as given in matlab package
 	RealVector newtonRaphson(Configs configs, RealVector initAlpha, List<RealVector> gamma){
 		// Extracting number of topics and documents
@@ -241,44 +313,25 @@ public class Utilities {
 	
 	// For the given alpha and gamma, computes the gradient to be used for NR iterations
 	public RealVector computeGradient(RealVector alpha, List<RealVector> gamma){
-		int noDocuments = gamma.size();
+		return this.computeGradient(alpha, this.computeAlphaSuffStats(gamma, 1), gamma.size());
+	}
+	
+	// Gradient of the lower bound wrt alpha, given the precomputed sufficient statistics of gamma
+	public RealVector computeGradient(RealVector alpha, RealVector suffStats, int noDocuments){
 		int noTopics = alpha.getDimension();
 		
 		// Computing some constant terms 
 		double alphaElemSum = 0;
-		for(int i = 0; i < noTopics; i++){
-			//System.out.println("alpha entry has become " + alpha.getEntry(i));
+		for(int i = 0; i < noTopics; i++)
 			alphaElemSum += alpha.getEntry(i);
-		}
 		
 		double diGammaAlphaSum = this.diGamma(alphaElemSum);
 		
-		
-		double diGammaDocSum = 0;
-		for (int i = 0; i < noDocuments; i++){
-			double gammaSum = 0;
-			
-			for(int j = 0; j < noTopics; j++)
-				gammaSum += gamma.get(i).getEntry(j);
-			
-			//System.out.format("%f %f\n", gammaSum, 1.0f);
-			diGammaDocSum += this.diGamma(gammaSum);
-		}
-		
-		
 		// Computing the gradient value
 		RealVector gradient = new ArrayRealVector(noTopics);
-		
-		double diGammaDocTerm, gradComponent;
 		for(int i = 0 ; i < noTopics; i++){
-			diGammaDocTerm = 0;
-			for(int j = 0; j < noDocuments; j++){
-				diGammaDocTerm += this.diGamma(gamma.get(j).getEntry(i));
-			}
-			diGammaDocTerm -= diGammaDocSum;
-			
-			gradComponent = noDocuments * (diGammaAlphaSum - this.diGamma(alpha.getEntry(i))) + diGammaDocTerm;
-			gradient.setEntry(i, gradComponent);
+			gradient.setEntry(i, noDocuments * (diGammaAlphaSum - this.diGamma(alpha.getEntry(i))) 
+									+ suffStats.getEntry(i));
 		}
 		return gradient;
 	}
@@ -308,6 +361,11 @@ public class Utilities {
 		return -1 * this.triGamma(alphaElemSum);
 	}
 	
+	// Hessian constant scaled by the number of documents, matching computeHessianDiag
+	public double computeHessianConstant(RealVector alpha, int noDocuments){
+		return noDocuments * this.computeHessianConstant(alpha);
+	}
+	
 	
 	// Returns the product of gradient and Hessian for special matrices
 	// Form of special hessian : H = diag(h) + \vec(1) * z * \vec(1)t
@@ -402,6 +460,56 @@ public class Utilities {
 	}
 	
 	
+	/*
+	 * Helpers for running loops over documents on several threads
+	 */
+	
+	// Work done on the half open range [start, end) of a chunked loop
+	public interface ChunkTask {
+		void run(int chunk, int start, int end);
+	}
+	
+	// Splits [0, size) into nbrChunks contiguous chunks and runs each one on its own thread
+	// Returns once all the chunks are done, rethrowing the first failure
+	public void parallelChunks(int size, int nbrChunks, final ChunkTask task){
+		nbrChunks = Math.max(1, Math.min(nbrChunks, size));
+		
+		// Nothing to gain from a thread pool for a single chunk
+		if(nbrChunks == 1){
+			task.run(0, 0, size);
+			return;
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(nbrChunks);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		try {
+			for(int c = 0; c < nbrChunks; c++){
+				final int chunk = c;
+				final int start = (int)((long) size * c / nbrChunks);
+				final int end = (int)((long) size * (c + 1) / nbrChunks);
+				results.add(pool.submit(new Runnable(){
+					public void run(){
+						task.run(chunk, start, end);
+					}
+				}));
+			}
+			
+			for(Future<?> result : results)
+				result.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for worker threads", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Worker thread failed", e.getCause());
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	
 	/*
 	 * Some helper functions for this classs
 	 */
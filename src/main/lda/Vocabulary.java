@@ -5,7 +5,11 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.List;
 //import java.util.List;
 
 /*
@@ -20,6 +24,9 @@ public class Vocabulary {
 	// array of words
 	private ArrayList<String> words;
 	
+	// reverse lookup from word to index, built once the words are read
+	private WordIndex index;
+	
 	// constructor for vocabulary given a file vocab.txt
 	public Vocabulary(File dictionary){
 		System.out.println("Reading the vocabulary...");
@@ -53,9 +60,59 @@ public class Vocabulary {
 		
 		//Final assignments
 		this.vocabSize = this.words.size();
+		this.index = new WordIndex(this.words);
 		System.out.println("Successfully read vocabulary!");
 	}
 	
+	// constructor for a vocabulary built in memory, e.g. a pruned one
+	public Vocabulary(List<String> wordList){
+		this.words = new ArrayList<String>(wordList);
+		this.vocabSize = this.words.size();
+		this.index = new WordIndex(this.words);
+	}
+	
+	// Index of a word, -1 if it is not in the vocabulary
+	public int getWordId(String word){
+		return this.index.get(word);
+	}
+	
+	// Vocabulary ids of the words of raw (already stemmed if the vocabulary is) text
+	// Words not in the vocabulary, stop words included, are dropped
+	public int[] tokenize(byte[] text, int start, int length){
+		return this.index.tokenize(text, start, length);
+	}
+	
+	public int[] tokenize(String text){
+		byte[] bytes = text.getBytes(Charset.forName("UTF-8"));
+		return this.index.tokenize(bytes, 0, bytes.length);
+	}
+	
+	// Document for a movie from its raw summary, e.g. to infer the topics of a new movie
+	public Document toDocument(String summary, int movieId, int docId){
+		int[] ids = this.tokenize(summary);
+		List<Integer> features = new ArrayList<Integer>(ids.length);
+		for(int id : ids)
+			features.add(id);
+		return new Document(features, movieId, docId);
+	}
+	
+	// Write the vocabulary back in the same "index,word" format it is read from
+	public void dumpToFile(String filename){
+		PrintWriter writer = null;
+		try {
+			writer = new PrintWriter(new File(filename), "UTF-8");
+		} catch (FileNotFoundException e1) {
+			e1.printStackTrace();
+		} catch (UnsupportedEncodingException e1) {
+			e1.printStackTrace();
+		}
+		
+		for(int i = 0; i < this.words.size(); i++)
+			writer.println(i + "," + this.words.get(i));
+		
+		writer.close();
+	}
+	
 	// getter for words
 	public ArrayList<String> getWords(){
 		return this.words;
@@ -0,0 +1,196 @@
+package main.lda;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * This class removes rare and very common words from a corpus when it is
+ * loaded, before any model is built. Beta is a dense nbrTopics x vocabSize
+ * matrix, so every word removed here shrinks beta, the M-step, the
+ * checkpoints and the model files.
+ * The words kept get compact ids in their original order, the documents are
+ * rewritten with the new ids, and the mapping back to the original ids is
+ * kept so that results can be related to the original vocabulary. Documents
+ * left without any word are dropped, as the preprocessing does.
+ */
+
+public class VocabularyPruning {
+	
+	// Results
+	private Corpus corpus;
+	private Vocabulary vocabulary;
+	
+	// newToOld[new id] is the original id, oldToNew[original id] the new one (-1 if removed)
+	private int[] newToOld;
+	private int[] oldToNew;
+	
+	// Document frequency of every original word
+	private int[] docFreq;
+	
+	// Statistics
+	private int removedMinDf, removedMaxDf, removedTopN;
+	private long tokensBefore, tokensAfter;
+	private int docsDropped;
+	
+	// constructor, prunes with the minDocFreq, maxDocFraction and maxVocabSize of the configs
+	public VocabularyPruning(Corpus c, Vocabulary vocab, Configs conf){
+		int vocabSize = vocab.getVocabSize();
+		List<Document> docs = c.getDocs();
+		
+		// Document frequency, every word counted once per document
+		this.docFreq = new int[vocabSize];
+		int[] lastDoc = new int[vocabSize];
+		Arrays.fill(lastDoc, -1);
+		for(int d = 0; d < docs.size(); d++){
+			for(int wordId : docs.get(d).getWordIds()){
+				if(lastDoc[wordId] != d){
+					lastDoc[wordId] = d;
+					this.docFreq[wordId]++;
+				}
+				this.tokensBefore++;
+			}
+		}
+		
+		// Document frequency filters
+		int maxDocFreq = (int) Math.floor(conf.getMaxDocFraction() * docs.size());
+		List<Integer> candidates = new ArrayList<Integer>();
+		for(int w = 0; w < vocabSize; w++){
+			if(this.docFreq[w] < conf.getMinDocFreq())
+				this.removedMinDf++;
+			else if(this.docFreq[w] > maxDocFreq)
+				this.removedMaxDf++;
+			else
+				candidates.add(w);
+		}
+		
+		// Most frequent words only, ties go to the smaller id
+		boolean[] keep = new boolean[vocabSize];
+		if(conf.getMaxVocabSize() > 0 && candidates.size() > conf.getMaxVocabSize()){
+			final int[] df = this.docFreq;
+			Collections.sort(candidates, new Comparator<Integer>(){
+				public int compare(Integer a, Integer b){
+					if(df[a] != df[b])
+						return (df[a] > df[b]) ? -1 : 1;
+					return a.compareTo(b);
+				}
+			});
+			this.removedTopN = candidates.size() - conf.getMaxVocabSize();
+			candidates = candidates.subList(0, conf.getMaxVocabSize());
+		}
+		for(int w : candidates)
+			keep[w] = true;
+		
+		// Compact ids, in the original order
+		this.oldToNew = new int[vocabSize];
+		this.newToOld = new int[candidates.size()];
+		List<String> words = new ArrayList<String>(candidates.size());
+		int next = 0;
+		for(int w = 0; w < vocabSize; w++){
+			if(keep[w]){
+				this.oldToNew[w] = next;
+				this.newToOld[next] = w;
+				words.add(vocab.getWordAtIndex(w));
+				next++;
+			}
+			else
+				this.oldToNew[w] = -1;
+		}
+		this.vocabulary = new Vocabulary(words);
+		
+		// Rewrite the documents with the new ids
+		List<Document> pruned = new ArrayList<Document>(docs.size());
+		for(Document doc : docs){
+			List<Integer> features = new ArrayList<Integer>(doc.getDocSize());
+			for(int wordId : doc.getWordIds())
+				if(this.oldToNew[wordId] >= 0)
+					features.add(this.oldToNew[wordId]);
+			
+			if(features.isEmpty()){
+				this.docsDropped++;
+				continue;
+			}
+			this.tokensAfter += features.size();
+			pruned.add(new Document(features, doc.getMovieId(), pruned.size()));
+		}
+		this.corpus = new Corpus(pruned);
+		
+		this.printStats();
+	}
+	
+	public void printStats(){
+		System.out.format("Vocabulary pruned from %d to %d words (min-df removed %d, max-df %d, top-N %d)\n",
+				this.oldToNew.length, this.newToOld.length, this.removedMinDf, this.removedMaxDf, this.removedTopN);
+		System.out.format("Tokens kept : %d of %d, documents dropped : %d\n",
+				this.tokensAfter, this.tokensBefore, this.docsDropped);
+	}
+	
+	// Write the mapping as "newId,originalId,word,docFreq" lines
+	public void dumpToFile(String filename){
+		PrintWriter writer = null;
+		try {
+			writer = new PrintWriter(new File(filename), "UTF-8");
+		} catch (FileNotFoundException e1) {
+			e1.printStackTrace();
+		} catch (UnsupportedEncodingException e1) {
+			e1.printStackTrace();
+		}
+		
+		for(int i = 0; i < this.newToOld.length; i++)
+			writer.println(i + "," + this.newToOld[i] + "," + this.vocabulary.getWordAtIndex(i) + "," + this.docFreq[this.newToOld[i]]);
+		
+		writer.close();
+	}
+	
+	// getters
+	public Corpus getCorpus(){
+		return this.corpus;
+	}
+	
+	public Vocabulary getVocabulary(){
+		return this.vocabulary;
+	}
+	
+	public int getOriginalWordId(int wordId){
+		return this.newToOld[wordId];
+	}
+	
+	// New id of an original word, -1 if it was removed
+	public int getWordId(int originalWordId){
+		return this.oldToNew[originalWordId];
+	}
+	
+	public int getDocFreq(int originalWordId){
+		return this.docFreq[originalWordId];
+	}
+	
+	public int getRemovedMinDf(){
+		return this.removedMinDf;
+	}
+	
+	public int getRemovedMaxDf(){
+		return this.removedMaxDf;
+	}
+	
+	public int getRemovedTopN(){
+		return this.removedTopN;
+	}
+	
+	public long getTokensBefore(){
+		return this.tokensBefore;
+	}
+	
+	public long getTokensAfter(){
+		return this.tokensAfter;
+	}
+	
+	public int getDocsDropped(){
+		return this.docsDropped;
+	}
+}
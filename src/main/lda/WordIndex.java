@@ -0,0 +1,176 @@
+package main.lda;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+/*
+ * This class maps words to their vocabulary index with an open-addressing
+ * hash table over the UTF-8 bytes of the words. All the words are packed in
+ * a single byte array and the table only holds ints, so the index costs a
+ * few bytes per word and lookups never create a String : a word can be
+ * looked up directly as a range of a larger byte buffer (see tokenize).
+ *
+ * Lookups fold ASCII upper case to lower case and skip non-ASCII bytes,
+ * the same normalization the python preprocessing applies (lower case,
+ * then ascii 'ignore'), so the vocabulary words themselves are expected in
+ * lower case ASCII.
+ */
+
+public class WordIndex {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	// Words back to back, word i is bytes[offsets[i], offsets[i + 1])
+	private byte[] bytes;
+	private int[] offsets;
+	
+	// Hash of every word, compared before the bytes
+	private int[] hashes;
+	
+	// Open addressing with linear probing, entries are word index + 1, 0 is empty
+	// The size is a power of two and at least twice the number of words
+	private int[] slots;
+	private int mask;
+	
+	// constructor, words are indexed by their position in the list
+	public WordIndex(List<String> words){
+		int nbrWords = words.size();
+		byte[][] encoded = new byte[nbrWords][];
+		int totalBytes = 0;
+		for(int i = 0; i < nbrWords; i++){
+			encoded[i] = words.get(i).getBytes(UTF8);
+			totalBytes += encoded[i].length;
+		}
+		
+		this.bytes = new byte[totalBytes];
+		this.offsets = new int[nbrWords + 1];
+		this.hashes = new int[nbrWords];
+		for(int i = 0; i < nbrWords; i++){
+			System.arraycopy(encoded[i], 0, this.bytes, this.offsets[i], encoded[i].length);
+			this.offsets[i + 1] = this.offsets[i] + encoded[i].length;
+		}
+		
+		int capacity = 2;
+		while(capacity < 2 * nbrWords)
+			capacity <<= 1;
+		this.slots = new int[capacity];
+		this.mask = capacity - 1;
+		
+		for(int i = 0; i < nbrWords; i++){
+			int start = this.offsets[i], length = this.offsets[i + 1] - start;
+			this.hashes[i] = hash(this.bytes, start, length);
+			
+			// First occurrence wins if the vocabulary has duplicates
+			if(this.find(this.bytes, start, length, this.hashes[i]) >= 0)
+				continue;
+			
+			int slot = this.hashes[i] & this.mask;
+			while(this.slots[slot] != 0)
+				slot = (slot + 1) & this.mask;
+			this.slots[slot] = i + 1;
+		}
+	}
+	
+	// Index of a word, -1 if it is not in the vocabulary
+	public int get(String word){
+		byte[] encoded = word.getBytes(UTF8);
+		return this.get(encoded, 0, encoded.length);
+	}
+	
+	// Index of the word held in buffer[start, start + length), -1 if it is not in the vocabulary
+	public int get(byte[] buffer, int start, int length){
+		return this.find(buffer, start, length, hash(buffer, start, length));
+	}
+	
+	private int find(byte[] buffer, int start, int length, int hash){
+		int slot = hash & this.mask;
+		while(this.slots[slot] != 0){
+			int id = this.slots[slot] - 1;
+			if(this.hashes[id] == hash && this.matches(id, buffer, start, length))
+				return id;
+			slot = (slot + 1) & this.mask;
+		}
+		return -1;
+	}
+	
+	// Compare word id with the normalized bytes of the buffer range
+	private boolean matches(int id, byte[] buffer, int start, int length){
+		int pos = this.offsets[id], end = this.offsets[id + 1];
+		for(int i = start; i < start + length; i++){
+			byte b = buffer[i];
+			if(b < 0)
+				continue;
+			if(pos == end || this.bytes[pos] != lower(b))
+				return false;
+			pos++;
+		}
+		return pos == end;
+	}
+	
+	// FNV-1a over the normalized bytes, with a final mix so the low bits spread well
+	private static int hash(byte[] buffer, int start, int length){
+		int h = 0x811C9DC5;
+		for(int i = start; i < start + length; i++){
+			byte b = buffer[i];
+			if(b < 0)
+				continue;
+			h ^= lower(b);
+			h *= 0x01000193;
+		}
+		h ^= (h >>> 16);
+		h *= 0x85EBCA6B;
+		h ^= (h >>> 13);
+		return h;
+	}
+	
+	private static byte lower(byte b){
+		return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+	}
+	
+	/*
+	 * Tokenizer
+	 */
+	
+	// Vocabulary ids of the words of a UTF-8 text, in order, unknown words are dropped
+	// A word is a run of ASCII letters, non-ASCII bytes inside a word are skipped
+	// (as the preprocessing does) and anything else separates words
+	public int[] tokenize(byte[] text, int start, int length){
+		int[] ids = new int[16];
+		int nbrIds = 0;
+		int end = start + length;
+		
+		int pos = start;
+		while(pos < end){
+			// Skip to the start of a word
+			while(pos < end && !isLetter(text[pos]))
+				pos++;
+			int wordStart = pos;
+			while(pos < end && (isLetter(text[pos]) || text[pos] < 0))
+				pos++;
+			if(pos == wordStart)
+				continue;
+			
+			int id = this.get(text, wordStart, pos - wordStart);
+			if(id < 0)
+				continue;
+			if(nbrIds == ids.length){
+				int[] grown = new int[2 * ids.length];
+				System.arraycopy(ids, 0, grown, 0, nbrIds);
+				ids = grown;
+			}
+			ids[nbrIds++] = id;
+		}
+		
+		int[] out = new int[nbrIds];
+		System.arraycopy(ids, 0, out, 0, nbrIds);
+		return out;
+	}
+	
+	private static boolean isLetter(byte b){
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+	}
+	
+	public int size(){
+		return this.hashes.length;
+	}
+}
@@ -0,0 +1,57 @@
+package tests.kernelTests;
+
+import java.util.Random;
+
+import main.kernels.Kernels;
+
+// Class to check that the SIMD kernels agree with the scalar ones, on every
+// length up to a few vectors so that all the tail lengths are covered.
+// Run with src-simd on the classpath and --add-modules=jdk.incubator.vector.
+public class KernelTest {
+	
+	/************************************************************/
+	public static void main(String[] args){
+		
+		Kernels scalar = Kernels.scalar();
+		Kernels simd = Kernels.get();
+		if(simd == scalar){
+			System.out.println("SIMD kernels not loaded, nothing to compare");
+			return;
+		}
+		System.out.println("Comparing " + simd.name() + " with " + scalar.name());
+		
+		Random rand = new Random(10701);
+		int failures = 0;
+		for(int length = 1; length <= 203; length++){
+			double[] a = new double[length];
+			double[] b = new double[length];
+			for(int i = 0; i < length; i++){
+				a[i] = rand.nextDouble();
+				b[i] = rand.nextDouble();
+			}
+			
+			// The SIMD sums are added per lane, so they only agree up to rounding
+			double expected = scalar.dot(a, b, length);
+			double actual = simd.dot(a, b, length);
+			if(Math.abs(expected - actual) > 1e-12 * Math.abs(expected)){
+				System.out.println("dot differs at length " + length + " : " + expected + " vs " + actual);
+				failures++;
+			}
+			
+			double[] expectedRow = new double[length];
+			double[] actualRow = new double[length];
+			double expectedSum = scalar.multiplyNormalize(a, b, expectedRow, length);
+			double actualSum = simd.multiplyNormalize(a, b, actualRow, length);
+			boolean same = Math.abs(expectedSum - actualSum) <= 1e-12 * expectedSum;
+			for(int i = 0; i < length; i++)
+				same &= Math.abs(expectedRow[i] - actualRow[i]) <= 1e-12 * expectedRow[i];
+			if(!same){
+				System.out.println("multiplyNormalize differs at length " + length);
+				failures++;
+			}
+		}
+		
+		System.out.println(failures == 0 ? "Kernels OK" : "Kernels FAILED : " + failures + " mismatches");
+	}
+	/************************************************************/
+}
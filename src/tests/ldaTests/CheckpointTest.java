@@ -0,0 +1,61 @@
+package tests.ldaTests;
+
+import java.io.File;
+
+import main.lda.Checkpoint;
+import main.lda.Configs;
+import main.lda.Corpus;
+import main.lda.Model;
+import main.lda.TopicModeler;
+import main.lda.Vocabulary;
+
+// Class to test checkpointing, resuming and warm starting variational EM
+public class CheckpointTest {
+	
+	/************************************************************/
+	public static void main(String[] args){
+		
+		// Path to the file
+		String corpusPath = "data/debug/summaryfeatures.txt";
+		String vocabPath = "data/debug/clean_vocabulary.txt";
+		String checkpointPath = "data/debug/checkpoints";
+		
+		Corpus movieSummaries = new Corpus(new File(corpusPath));
+		Vocabulary movieVocab = new Vocabulary(new File(vocabPath));
+		TopicModeler tm = new TopicModeler();
+		
+		// First run, stopped after 2 iterations
+		Configs conf = new Configs();
+		conf.setNbrTopics(10);
+		conf.setEmIters(2);
+		conf.setCheckpointDir(checkpointPath);
+		Model model = tm.modelCorpus(movieSummaries, conf, movieVocab);
+		System.out.println("Alpha after 2 iterations : " + model.getAlpha());
+		
+		// Alpha must come back exactly from the checkpoint
+		Checkpoint checkpoint = new Checkpoint(checkpointPath);
+		checkpoint.save(model, 2);
+		Model restored = new Model();
+		restored.initModel(movieSummaries, conf, movieVocab);
+		checkpoint.restore(restored);
+		boolean sameAlpha = restored.getAlpha().getDimension() == model.getAlpha().getDimension();
+		for(int k = 0; sameAlpha && k < model.getAlpha().getDimension(); k++)
+			sameAlpha = restored.getAlpha().getEntry(k) == model.getAlpha().getEntry(k);
+		System.out.println(sameAlpha ? "Alpha round trip OK" : "Alpha round trip FAILED : " + restored.getAlpha());
+		
+		// Second run, continues up to 4 iterations
+		conf.setEmIters(4);
+		conf.setResume(true);
+		model = tm.modelCorpus(movieSummaries, conf, movieVocab);
+		System.out.println("Alpha after resuming to 4 iterations : " + model.getAlpha());
+		
+		// Third run, refines the checkpointed model for 2 more iterations
+		Configs warmConf = new Configs();
+		warmConf.setNbrTopics(10);
+		warmConf.setEmIters(2);
+		warmConf.setWarmStartDir(checkpointPath);
+		model = tm.modelCorpus(movieSummaries, warmConf, movieVocab);
+		System.out.println("Alpha after warm start : " + model.getAlpha());
+	}
+	/************************************************************/
+}
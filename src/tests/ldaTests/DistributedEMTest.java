@@ -0,0 +1,118 @@
+package tests.ldaTests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import main.lda.Configs;
+import main.lda.Corpus;
+import main.lda.DistributedEM;
+import main.lda.EMTransport;
+import main.lda.FileTransport;
+import main.lda.Model;
+import main.lda.SocketTransport;
+import main.lda.TopicModeler;
+import main.lda.Vocabulary;
+
+import org.apache.commons.math3.linear.RealMatrix;
+
+// Class to compare distributed EM (coordinator and workers in threads) against a single process
+public class DistributedEMTest {
+	
+	/************************************************************/
+	public static void main(String[] args) throws Exception {
+		
+		// Path to the file
+		String corpusPath = "data/debug/summaryfeatures.txt";
+		String vocabPath = "data/debug/clean_vocabulary.txt";
+		
+		Corpus movieSummaries = new Corpus(new File(corpusPath));
+		Vocabulary movieVocab = new Vocabulary(new File(vocabPath));
+		
+		Configs conf = new Configs();
+		conf.setNbrTopics(10);
+		conf.setNbrThreads(1);
+		Model single = new TopicModeler().modelCorpus(movieSummaries, conf, movieVocab);
+		
+		// 3 workers over loopback sockets
+		int nbrWorkers = 3;
+		final int port = 47011;
+		Model socketModel = runDistributed(movieSummaries, conf, movieVocab, nbrWorkers, new TransportFactory(){
+			public EMTransport coordinator(int nbrWorkers) throws Exception {
+				return SocketTransport.coordinator(port, nbrWorkers);
+			}
+			public EMTransport worker(int workerId) throws Exception {
+				return SocketTransport.worker("localhost", port, workerId);
+			}
+		});
+		compare("sockets", single, socketModel);
+		
+		// Same run through a shared directory
+		final String dir = "data/debug/distributed";
+		final int nbrFileWorkers = nbrWorkers;
+		Model fileModel = runDistributed(movieSummaries, conf, movieVocab, nbrWorkers, new TransportFactory(){
+			public EMTransport coordinator(int nbrWorkers){
+				return new FileTransport(dir, nbrWorkers, -1);
+			}
+			public EMTransport worker(int workerId){
+				return new FileTransport(dir, nbrFileWorkers, workerId);
+			}
+		});
+		compare("files", single, fileModel);
+	}
+	
+	interface TransportFactory {
+		EMTransport coordinator(int nbrWorkers) throws Exception;
+		EMTransport worker(int workerId) throws Exception;
+	}
+	
+	private static Model runDistributed(final Corpus corpus, final Configs conf, final Vocabulary vocab,
+			final int nbrWorkers, final TransportFactory factory) throws Exception {
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		List<Thread> workers = new ArrayList<Thread>();
+		for(int w = 0; w < nbrWorkers; w++){
+			final int workerId = w;
+			Thread worker = new Thread(new Runnable(){
+				public void run(){
+					try {
+						EMTransport transport = factory.worker(workerId);
+						new DistributedEM().work(corpus.shard(workerId, nbrWorkers), conf, vocab, transport);
+						transport.close();
+					}
+					catch (Throwable e) {
+						synchronized(failures){
+							failures.add(e);
+						}
+					}
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		
+		EMTransport transport = factory.coordinator(nbrWorkers);
+		Model model = new DistributedEM().coordinate(conf, vocab, transport);
+		transport.close();
+		for(Thread worker : workers)
+			worker.join();
+		
+		if(!failures.isEmpty())
+			throw new IllegalStateException("Worker failed", failures.get(0));
+		return model;
+	}
+	
+	private static void compare(String label, Model single, Model distributed){
+		RealMatrix betaDiff = single.getBeta().subtract(distributed.getBeta());
+		double betaMax = 0;
+		for(int i = 0; i < betaDiff.getRowDimension(); i++)
+			for(int j = 0; j < betaDiff.getColumnDimension(); j++)
+				betaMax = Math.max(betaMax, Math.abs(betaDiff.getEntry(i, j)));
+		
+		double alphaRel = single.getAlpha().subtract(distributed.getAlpha()).getLInfNorm()
+				/ single.getAlpha().getLInfNorm();
+		
+		System.out.println("Distributed (" + label + ") max beta difference : " + betaMax);
+		System.out.println("Distributed (" + label + ") max relative alpha difference : " + alphaRel);
+	}
+	/************************************************************/
+}
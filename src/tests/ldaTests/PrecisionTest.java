@@ -0,0 +1,70 @@
+package tests.ldaTests;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import main.lda.Configs;
+import main.lda.Corpus;
+import main.lda.Model;
+import main.lda.TopicModeler;
+import main.lda.Vocabulary;
+
+import org.apache.commons.math3.linear.RealMatrix;
+
+// Class to compare single precision storage against the double precision path
+public class PrecisionTest {
+	
+	/************************************************************/
+	public static void main(String[] args){
+		
+		// Path to the file
+		String corpusPath = "data/debug/summaryfeatures.txt";
+		String vocabPath = "data/debug/clean_vocabulary.txt";
+		
+		Corpus movieSummaries = new Corpus(new File(corpusPath));
+		Vocabulary movieVocab = new Vocabulary(new File(vocabPath));
+		TopicModeler tm = new TopicModeler();
+		
+		// Same seed, same configs, only the storage differs
+		Configs conf = new Configs();
+		conf.setNbrTopics(10);
+		Model doubleModel = tm.modelCorpus(movieSummaries, conf, movieVocab);
+		
+		conf.setSinglePrecision(true);
+		Model floatModel = tm.modelCorpus(movieSummaries, conf, movieVocab);
+		
+		// Largest differences, absolute for beta and relative for alpha and gamma
+		RealMatrix betaDiff = doubleModel.getBeta().subtract(floatModel.getBeta());
+		double betaMax = 0;
+		for(int i = 0; i < betaDiff.getRowDimension(); i++)
+			for(int j = 0; j < betaDiff.getColumnDimension(); j++)
+				betaMax = Math.max(betaMax, Math.abs(betaDiff.getEntry(i, j)));
+		
+		double alphaRel = doubleModel.getAlpha().subtract(floatModel.getAlpha()).getLInfNorm()
+				/ doubleModel.getAlpha().getLInfNorm();
+		
+		double gammaRel = 0;
+		for(int d = 0; d < movieSummaries.getNbrDocs(); d++){
+			double diff = doubleModel.getGamma().get(d).getL1Distance(floatModel.getGamma().get(d));
+			gammaRel = Math.max(gammaRel, diff / doubleModel.getGamma().get(d).getL1Norm());
+		}
+		
+		System.out.println("Max beta difference : " + betaMax);
+		System.out.println("Max relative alpha difference : " + alphaRel);
+		System.out.println("Max relative gamma difference (L1) : " + gammaRel);
+		
+		// Top words can swap places when two betas round to the same float, compare them as sets
+		List<List<String> > doubleWords = doubleModel.getTopicWords(10);
+		List<List<String> > floatWords = floatModel.getTopicWords(10);
+		int shared = 0;
+		for(int k = 0; k < doubleWords.size(); k++){
+			Set<String> words = new HashSet<String>(doubleWords.get(k));
+			words.retainAll(floatWords.get(k));
+			shared += words.size();
+		}
+		System.out.println("Top 10 words shared : " + shared + " of " + 10 * doubleWords.size());
+	}
+	/************************************************************/
+}
@@ -0,0 +1,52 @@
+package tests.ldaTests;
+
+import java.io.File;
+
+import main.lda.Configs;
+import main.lda.Corpus;
+import main.lda.Document;
+import main.lda.Model;
+import main.lda.TopicModeler;
+import main.lda.Vocabulary;
+import main.lda.VocabularyPruning;
+
+// Class to test pruning the vocabulary at load and training on the pruned corpus
+public class PruningTest {
+	
+	/************************************************************/
+	public static void main(String[] args){
+		
+		// Path to the file
+		String corpusPath = "data/debug/summaryfeatures.txt";
+		String vocabPath = "data/debug/clean_vocabulary.txt";
+		
+		Corpus movieSummaries = new Corpus(new File(corpusPath));
+		Vocabulary movieVocab = new Vocabulary(new File(vocabPath));
+		
+		// Words in at least 2 documents and at most half of them, 1000 words at most
+		Configs conf = new Configs();
+		conf.setNbrTopics(10);
+		conf.setMinDocFreq(2);
+		conf.setMaxDocFraction(0.5);
+		conf.setMaxVocabSize(1000);
+		
+		VocabularyPruning pruning = new VocabularyPruning(movieSummaries, movieVocab, conf);
+		Corpus corpus = pruning.getCorpus();
+		Vocabulary vocab = pruning.getVocabulary();
+		
+		// Every word of the pruned documents maps back to the same word in the original vocabulary
+		int wrong = 0;
+		for(Document doc : corpus.getDocs())
+			for(int wordId : doc.getWordIds())
+				if(!vocab.getWordAtIndex(wordId).equals(movieVocab.getWordAtIndex(pruning.getOriginalWordId(wordId))))
+					wrong++;
+		System.out.println("Words mapped to a different original word : " + wrong);
+		
+		Model model = new TopicModeler().modelCorpus(corpus, conf, vocab);
+		System.out.println("Beta is " + model.getBeta().getRowDimension() + " x " + model.getBeta().getColumnDimension()
+				+ " instead of " + conf.getNbrTopics() + " x " + movieVocab.getVocabSize());
+		for(int k = 0; k < 3; k++)
+			System.out.println("Topic " + k + " : " + model.getTopicWords(10).get(k));
+	}
+	/************************************************************/
+}
@@ -0,0 +1,79 @@
+package tests.ldaTests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import main.lda.Configs;
+import main.lda.Corpus;
+import main.lda.Document;
+import main.lda.Model;
+import main.lda.TopicModeler;
+import main.lda.Vocabulary;
+
+// Class to test the residual scheduling of the E-step
+public class ScheduleTest {
+	
+	/************************************************************/
+	public static void main(String[] args){
+		
+		// Small random corpus, 200 documents over 50 words
+		int nDocs = 200;
+		int nWords = 50;
+		Random rand = new Random(10701);
+		List<Document> docs = new ArrayList<Document>();
+		for(int d = 0; d < nDocs; d++){
+			List<Integer> features = new ArrayList<Integer>();
+			for(int n = 0; n < 20; n++)
+				features.add(rand.nextInt(nWords));
+			docs.add(new Document(features, d, d));
+		}
+		List<String> words = new ArrayList<String>();
+		for(int w = 0; w < nWords; w++)
+			words.add("w" + w);
+		Corpus corpus = new Corpus(docs);
+		
+		Configs conf = new Configs();
+		conf.setNbrTopics(5);
+		conf.setNbrThreads(1);
+		conf.setResidualScheduling(true);
+		conf.setMaxScheduledFraction(0.1);
+		conf.setFullSweepInterval(5);
+		
+		Model model = new Model();
+		model.initModel(corpus, conf, new Vocabulary(words));
+		TopicModeler tm = new TopicModeler();
+		
+		// As after a resume at iteration 3 : a quarter of the documents has a known large residual,
+		// the others were never processed. The cap (20 documents) must not drop the latter.
+		double[] residuals = new double[nDocs];
+		Arrays.fill(residuals, Double.POSITIVE_INFINITY);
+		for(int d = 0; d < nDocs / 4; d++)
+			residuals[d] = 1.0;
+		tm.expectationStep(corpus, model, conf, residuals, 3);
+		
+		int neverProcessed = 0;
+		int known = 0;
+		for(int d = 0; d < nDocs; d++){
+			if(residuals[d] == Double.POSITIVE_INFINITY)
+				neverProcessed++;
+			else if(d < nDocs / 4 && residuals[d] == 1.0)
+				known++;
+		}
+		System.out.println("Documents still never processed : " + neverProcessed + " (expected 0)");
+		System.out.println("Known documents skipped by the cap : " + known + " (expected " + nDocs / 4 + ")");
+		
+		// Next iteration : every document has a residual, at most 10% of them are processed
+		double[] before = residuals.clone();
+		tm.expectationStep(corpus, model, conf, residuals, 4);
+		int processed = 0;
+		for(int d = 0; d < nDocs; d++)
+			if(residuals[d] != before[d])
+				processed++;
+		System.out.println("Documents processed under the cap : " + processed + " (expected at most " + nDocs / 10 + ")");
+		
+		System.out.println(neverProcessed == 0 && known == nDocs / 4 && processed <= nDocs / 10 ? "Schedule OK" : "Schedule FAILED");
+	}
+	/************************************************************/
+}
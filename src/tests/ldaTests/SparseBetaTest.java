@@ -0,0 +1,64 @@
+package tests.ldaTests;
+
+import java.io.File;
+
+import main.lda.Configs;
+import main.lda.Corpus;
+import main.lda.Document;
+import main.lda.InferenceBlock;
+import main.lda.Model;
+import main.lda.SparseBeta;
+import main.lda.TopicModeler;
+import main.lda.Vocabulary;
+
+import org.apache.commons.math3.linear.RealVector;
+
+// Class to compare fold-in inference on the sparse beta against the dense one
+public class SparseBetaTest {
+	
+	/************************************************************/
+	public static void main(String[] args){
+		
+		// Path to the file
+		String corpusPath = "data/debug/summaryfeatures.txt";
+		String vocabPath = "data/debug/clean_vocabulary.txt";
+		String sparsePath = "data/debug/beta_sparse.bin";
+		
+		Corpus movieSummaries = new Corpus(new File(corpusPath));
+		Vocabulary movieVocab = new Vocabulary(new File(vocabPath));
+		
+		Configs conf = new Configs();
+		conf.setNbrTopics(10);
+		Model model = new TopicModeler().modelCorpus(movieSummaries, conf, movieVocab);
+		
+		double[] masses = {0.8, 0.9, 0.99};
+		for(double mass : masses){
+			SparseBeta.fromBeta(model.getBeta(), mass, 0).write(sparsePath);
+			SparseBeta sparse = SparseBeta.read(sparsePath);
+			
+			long denseBytes = 8L * model.getNbrTopics() * model.getVocabSize();
+			System.out.format("Mass %.2f : %d bytes in memory, %d on disk, dense beta is %d bytes\n",
+					mass, sparse.getSizeBytes(), new File(sparsePath).length(), denseBytes);
+			
+			// Fold-in every document against both, compare the topic proportions
+			InferenceBlock infBlock = new InferenceBlock();
+			double maxDiff = 0, sumDiff = 0;
+			int sameTopTopic = 0;
+			for(Document doc : movieSummaries.getDocs()){
+				RealVector dense = infBlock.foldIn(doc, model.getAlpha(), model.getBeta(), conf);
+				RealVector folded = infBlock.foldIn(doc, model.getAlpha(), sparse, conf);
+				dense = dense.mapDivide(dense.getL1Norm());
+				folded = folded.mapDivide(folded.getL1Norm());
+				
+				maxDiff = Math.max(maxDiff, dense.getL1Distance(folded));
+				sumDiff += dense.getL1Distance(folded);
+				if(dense.getMaxIndex() == folded.getMaxIndex())
+					sameTopTopic++;
+			}
+			System.out.format("Mass %.2f : L1 difference of topic proportions %.4f on average, %.4f at most\n",
+					mass, sumDiff / movieSummaries.getNbrDocs(), maxDiff);
+			System.out.format("Mass %.2f : same top topic for %d of %d documents\n", mass, sameTopTopic, movieSummaries.getNbrDocs());
+		}
+	}
+	/************************************************************/
+}
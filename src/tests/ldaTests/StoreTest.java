@@ -0,0 +1,46 @@
+package tests.ldaTests;
+
+import java.io.File;
+
+import main.lda.Configs;
+import main.lda.Corpus;
+import main.lda.MappedModelStore;
+import main.lda.Model;
+import main.lda.TopicModeler;
+import main.lda.Vocabulary;
+
+// Class to test serving a model from the memory-mapped store
+public class StoreTest {
+	
+	/************************************************************/
+	public static void main(String[] args){
+		
+		// Path to the file
+		String corpusPath = "data/debug/summaryfeatures.txt";
+		String vocabPath = "data/debug/clean_vocabulary.txt";
+		String storePath = "data/debug/model.store";
+		
+		Corpus movieSummaries = new Corpus(new File(corpusPath));
+		Vocabulary movieVocab = new Vocabulary(new File(vocabPath));
+		
+		Configs conf = new Configs();
+		conf.setNbrTopics(10);
+		conf.setEmIters(2);
+		Model trained = new TopicModeler().modelCorpus(movieSummaries, conf, movieVocab);
+		MappedModelStore.write(trained, storePath);
+		
+		// What a serving process does : no corpus, only the mapped file and the vocabulary
+		Model served = new Model();
+		served.initFromStore(MappedModelStore.open(storePath), movieVocab);
+		
+		double betaDiff = trained.getBeta().subtract(served.getBeta()).getNorm();
+		double gammaDiff = 0;
+		for(int d = 0; d < movieSummaries.getNbrDocs(); d++)
+			gammaDiff += trained.getGamma().get(d).getDistance(served.getGamma().get(d));
+		
+		System.out.println("Beta difference : " + betaDiff);
+		System.out.println("Gamma difference : " + gammaDiff);
+		System.out.println("Top words of topic 0 : " + served.getTopicWords(10).get(0));
+	}
+	/************************************************************/
+}
@@ -0,0 +1,40 @@
+package tests.ldaTests;
+
+import java.io.File;
+import java.util.List;
+
+import main.lda.Configs;
+import main.lda.Corpus;
+import main.lda.TrainingSweep;
+import main.lda.Vocabulary;
+
+// Class to test training several number of topics on one corpus
+public class SweepTest {
+	
+	/************************************************************/
+	public static void main(String[] args){
+		
+		// Path to the file
+		String corpusPath = "data/debug/summaryfeatures.txt";
+		String vocabPath = "data/debug/clean_vocabulary.txt";
+		
+		// Parsed once, shared by all the runs
+		Corpus movieSummaries = new Corpus(new File(corpusPath));
+		Vocabulary movieVocab = new Vocabulary(new File(vocabPath));
+		
+		// 2 threads and 256 MB for the whole sweep
+		TrainingSweep sweep = new TrainingSweep(movieSummaries, movieVocab, 2, 256L << 20);
+		
+		int[] topicCounts = {5, 10, 15};
+		for(int nbrTopics : topicCounts){
+			Configs conf = new Configs();
+			conf.setNbrTopics(nbrTopics);
+			conf.setNbrThreads(1);
+			sweep.addConfig(conf);
+		}
+		
+		List<String> dirs = sweep.run("data/debug/sweep");
+		System.out.println("Models written to : " + dirs);
+	}
+	/************************************************************/
+}
@@ -44,6 +44,11 @@ public class UtilsTest {
 	System.out.println(nextAlpha);
 	System.out.println(initAlpha);
 	
+	// The damped NR steps should never decrease the bound
+	RealVector suffStats = utils.computeAlphaSuffStats(gamma, 2);
+	System.out.println("Bound before NR : " + utils.alphaBound(initAlpha, suffStats, nbrDocuments));
+	System.out.println("Bound after NR : " + utils.alphaBound(nextAlpha, suffStats, nbrDocuments));
+	
 	// Debugging each step
 	RealVector hessianDiag = new ArrayRealVector(new double[]{1, 2, 3, 4, 5, 6});
 	RealVector gradient = new ArrayRealVector(new double[]{6, 5, 4, 3, 2, 1});
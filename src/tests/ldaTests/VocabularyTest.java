@@ -0,0 +1,89 @@
+package tests.ldaTests;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import main.lda.Corpus;
+import main.lda.Document;
+import main.lda.Vocabulary;
+
+// Class to test the word index and the tokenizer of the vocabulary
+public class VocabularyTest {
+	
+	/************************************************************/
+	public static void main(String[] args) throws Exception {
+		
+		// Path to the file
+		String corpusPath = "data/debug/summaryfeatures.txt";
+		String vocabPath = "data/debug/clean_vocabulary.txt";
+		String summariesPath = "data/debug/summaries_raw.txt";
+		
+		Corpus movieSummaries = new Corpus(new File(corpusPath));
+		Vocabulary movieVocab = new Vocabulary(new File(vocabPath));
+		
+		// Every word maps back to its own index
+		int wrong = 0;
+		for(int i = 0; i < movieVocab.getVocabSize(); i++)
+			if(movieVocab.getWordId(movieVocab.getWordAtIndex(i)) != i)
+				wrong++;
+		System.out.println("Words not mapped to their index : " + wrong);
+		System.out.println("Unknown word : " + movieVocab.getWordId("notawordinthevocabulary"));
+		
+		// Rebuild raw text from the documents, with case, punctuation and digits around
+		// the words, then tokenize it back and compare with the original word ids
+		PrintWriter writer = new PrintWriter(new File(summariesPath), "UTF-8");
+		for(Document doc : movieSummaries.getDocs()){
+			StringBuilder text = new StringBuilder();
+			List<String> words = doc.readDoc(movieVocab);
+			for(int n = 0; n < words.size(); n++){
+				String word = words.get(n);
+				if(n % 3 == 0)
+					word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+				text.append(word).append((n % 4 == 0) ? ", the 42 " : " ");
+			}
+			writer.println(doc.getMovieId() + "\t" + text);
+		}
+		writer.close();
+		
+		Corpus rebuilt = Corpus.fromSummaries(new File(summariesPath), movieVocab);
+		int mismatches = 0;
+		for(int d = 0; d < movieSummaries.getNbrDocs(); d++){
+			Document doc = movieSummaries.getDocs().get(d);
+			Document other = rebuilt.getDocs().get(d);
+			if(doc.getMovieId() != other.getMovieId() || !doc.getWordIds().equals(other.getWordIds()))
+				mismatches++;
+		}
+		System.out.println("Documents rebuilt : " + rebuilt.getNbrDocs() + " of " + movieSummaries.getNbrDocs());
+		System.out.println("Documents with different word ids : " + mismatches);
+		
+		// Tokenizing speed against splitting Strings and looking them up in a HashMap<String, Integer>
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		for(int i = 0; i < movieVocab.getVocabSize(); i++)
+			map.put(movieVocab.getWordAtIndex(i), i);
+		byte[] text = Files.readAllBytes(new File(summariesPath).toPath());
+		String textString = new String(text, "UTF-8");
+		
+		long sum = 0;
+		long start = System.nanoTime();
+		for(int rep = 0; rep < 200; rep++)
+			sum += movieVocab.tokenize(text, 0, text.length).length;
+		long indexTime = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		for(int rep = 0; rep < 200; rep++){
+			for(String word : textString.toLowerCase().split("[^a-z]+")){
+				Integer id = map.get(word);
+				if(id != null)
+					sum++;
+			}
+		}
+		long mapTime = System.nanoTime() - start;
+		
+		System.out.format("Tokenizing 200 times : word index %d ms, split and HashMap %d ms (%d)\n", indexTime / 1000000, mapTime / 1000000, sum);
+	}
+	/************************************************************/
+}